@@ -0,0 +1,19 @@
+package com.aitravelplanner.admission;
+
+/**
+ * 生成请求未被准入（单用户限流或全局排队已满/超时），调用方应返回429并携带 Retry-After
+ */
+public class AdmissionRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,235 @@
+package com.aitravelplanner.admission;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AI生成接口准入控制：
+ * 1. 每个用户一个令牌桶，限制单用户的请求速率（如客户端重试风暴）；
+ * 2. 全局并发上限，超出时进入有界优先级队列，交互请求先于批量请求出队；
+ * 3. 队列已满或等待超时立即拒绝，由调用方返回429与 Retry-After，而不是让请求慢慢超时。
+ */
+@Component
+public class GenerationAdmission {
+    private static final Logger logger = LoggerFactory.getLogger(GenerationAdmission.class);
+
+    @Value("${ai.generation.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.generation.admission.max-concurrent:16}")
+    private int maxConcurrent;
+
+    @Value("${ai.generation.admission.queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${ai.generation.admission.queue-timeout-millis:5000}")
+    private long queueTimeoutMillis;
+
+    @Value("${ai.generation.admission.user-burst:5}")
+    private int userBurst;
+
+    @Value("${ai.generation.admission.user-refill-per-minute:6}")
+    private double userRefillPerMinute;
+
+    @Value("${ai.generation.admission.idle-bucket-seconds:600}")
+    private long idleBucketSeconds;
+
+    private final Map<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+
+    // 优先级高的在前，同优先级按到达顺序
+    private final TreeSet<Waiter> queue = new TreeSet<>(
+            Comparator.comparing((Waiter waiter) -> waiter.priority).thenComparingLong(waiter -> waiter.sequence));
+    private long nextSequence = 0;
+    private int inFlight = 0;
+    // 单次生成占用许可的平均时长（指数加权），用于估算 Retry-After
+    private double avgHoldMillis = 10000;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejectedRate = new AtomicLong();
+    private final AtomicLong rejectedQueueFull = new AtomicLong();
+    private final AtomicLong rejectedTimeout = new AtomicLong();
+    private final AtomicLong displaced = new AtomicLong();
+
+    /**
+     * 只检查单用户速率，不占用并发许可（用于异步提交等不在请求线程内执行生成的场景）
+     * @throws AdmissionRejectedException 超过速率限制
+     */
+    public void checkRate(String userId) {
+        if (!enabled) {
+            return;
+        }
+        long waitMillis = userBuckets.computeIfAbsent(userKey(userId),
+                key -> new TokenBucket(userBurst, userRefillPerMinute)).tryConsume();
+        if (waitMillis > 0) {
+            rejectedRate.incrementAndGet();
+            throw new AdmissionRejectedException("请求过于频繁，请稍后重试", toRetryAfterSeconds(waitMillis));
+        }
+    }
+
+    /**
+     * 检查单用户速率并获取全局并发许可，许可用完后必须关闭
+     * @throws AdmissionRejectedException 超过速率限制、队列已满或排队超时
+     */
+    public Permit acquire(String userId, RequestPriority priority) {
+        if (!enabled) {
+            return new Permit(null);
+        }
+        checkRate(userId);
+
+        Waiter waiter;
+        synchronized (this) {
+            if (inFlight < maxConcurrent && queue.isEmpty()) {
+                inFlight++;
+                admitted.incrementAndGet();
+                return new Permit(this);
+            }
+            if (queue.size() >= queueCapacity) {
+                // 队列已满时，优先级更高的请求挤掉队尾优先级最低的等待者
+                Waiter lowest = queue.isEmpty() ? null : queue.last();
+                if (lowest == null || lowest.priority.compareTo(priority) <= 0) {
+                    rejectedQueueFull.incrementAndGet();
+                    throw new AdmissionRejectedException("生成请求繁忙，请稍后重试", estimateRetryAfterSeconds());
+                }
+                queue.remove(lowest);
+                displaced.incrementAndGet();
+                lowest.granted.completeExceptionally(
+                        new AdmissionRejectedException("生成请求繁忙，请稍后重试", estimateRetryAfterSeconds()));
+            }
+            waiter = new Waiter(priority, nextSequence++);
+            queue.add(waiter);
+            queued.incrementAndGet();
+        }
+
+        try {
+            waiter.granted.get(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+            admitted.incrementAndGet();
+            return new Permit(this);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AdmissionRejectedException) {
+                throw (AdmissionRejectedException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                if (!queue.remove(waiter)) {
+                    // 超时的同时已被分配许可（或被挤出队列），以实际结果为准
+                    try {
+                        waiter.granted.getNow(null);
+                        admitted.incrementAndGet();
+                        return new Permit(this);
+                    } catch (CompletionException ce) {
+                        throw (AdmissionRejectedException) ce.getCause();
+                    }
+                }
+            }
+            rejectedTimeout.incrementAndGet();
+            logger.warn("生成请求排队超过 {} 毫秒，拒绝请求", queueTimeoutMillis);
+            throw new AdmissionRejectedException("生成请求繁忙，请稍后重试", estimateRetryAfterSeconds());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (this) {
+            stats.put("inFlight", inFlight);
+            stats.put("queueLength", queue.size());
+            stats.put("avgHoldMillis", (long) avgHoldMillis);
+        }
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("admitted", admitted.get());
+        stats.put("queued", queued.get());
+        stats.put("rejectedRate", rejectedRate.get());
+        stats.put("rejectedQueueFull", rejectedQueueFull.get());
+        stats.put("rejectedTimeout", rejectedTimeout.get());
+        stats.put("displaced", displaced.get());
+        stats.put("trackedUsers", userBuckets.size());
+        return stats;
+    }
+
+    /**
+     * 定期回收已补满且长时间未使用的令牌桶
+     */
+    @Scheduled(fixedDelayString = "${ai.generation.admission.prune-interval-millis:60000}")
+    public void pruneIdleBuckets() {
+        long idleMillis = TimeUnit.SECONDS.toMillis(idleBucketSeconds);
+        userBuckets.values().removeIf(bucket -> bucket.isIdle(idleMillis));
+    }
+
+    // 归还许可：有等待者时直接把许可交给优先级最高的等待者
+    private synchronized void release(long holdMillis) {
+        avgHoldMillis = avgHoldMillis * 0.9 + holdMillis * 0.1;
+        Waiter next = queue.pollFirst();
+        if (next != null) {
+            next.granted.complete(null);
+        } else {
+            inFlight--;
+        }
+    }
+
+    // 按队列长度与平均占用时长估算大约多久后有空闲许可
+    private synchronized long estimateRetryAfterSeconds() {
+        double waitMillis = avgHoldMillis * (queue.size() + 1) / Math.max(1, maxConcurrent);
+        return toRetryAfterSeconds((long) waitMillis);
+    }
+
+    private static long toRetryAfterSeconds(long millis) {
+        return Math.max(1, (millis + 999) / 1000);
+    }
+
+    private static String userKey(String userId) {
+        return userId == null || userId.isBlank() ? "anonymous" : userId;
+    }
+
+    private static class Waiter {
+        private final RequestPriority priority;
+        private final long sequence;
+        private final CompletableFuture<Void> granted = new CompletableFuture<>();
+
+        private Waiter(RequestPriority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * 并发许可，关闭时归还；重复关闭无副作用
+     */
+    public static class Permit implements AutoCloseable {
+        private final GenerationAdmission owner;
+        private final long acquiredAt = System.currentTimeMillis();
+        private boolean released = false;
+
+        private Permit(GenerationAdmission owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (owner == null || released) {
+                return;
+            }
+            released = true;
+            owner.release(System.currentTimeMillis() - acquiredAt);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.aitravelplanner.admission;
+
+import java.util.Locale;
+
+/**
+ * 生成请求优先级：页面上等待结果的交互请求优先于批量/API调用
+ */
+public enum RequestPriority {
+    INTERACTIVE,
+    BULK;
+
+    /**
+     * 由服务端决定优先级：只有已登录用户为自己发起的请求才算交互请求，
+     * 匿名调用或代他人生成一律按批量处理。
+     * 请求头 X-Request-Priority 只能主动降级为 bulk，不能提升优先级
+     */
+    public static RequestPriority resolve(boolean ownSession, String header) {
+        if (!ownSession) {
+            return BULK;
+        }
+        if (header != null && "bulk".equals(header.trim().toLowerCase(Locale.ROOT))) {
+            return BULK;
+        }
+        return INTERACTIVE;
+    }
+}
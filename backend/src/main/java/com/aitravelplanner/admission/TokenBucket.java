@@ -0,0 +1,50 @@
+package com.aitravelplanner.admission;
+
+/**
+ * 令牌桶：容量为允许的突发请求数，按固定速率补充令牌
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double refillPerMillis;
+
+    private double tokens;
+    private long lastRefillAt;
+    private long lastUsedAt;
+
+    public TokenBucket(int capacity, double refillPerMinute) {
+        this.capacity = capacity;
+        this.refillPerMillis = refillPerMinute / 60000.0;
+        this.tokens = capacity;
+        this.lastRefillAt = System.currentTimeMillis();
+        this.lastUsedAt = lastRefillAt;
+    }
+
+    /**
+     * 尝试取走一个令牌
+     * @return 0 表示成功；否则为距离下一个令牌可用的毫秒数
+     */
+    public synchronized long tryConsume() {
+        refill();
+        lastUsedAt = lastRefillAt;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / refillPerMillis);
+    }
+
+    /**
+     * 令牌已补满且长时间未使用的桶可以回收，回收后重新创建的桶与之等价
+     */
+    public synchronized boolean isIdle(long idleMillis) {
+        refill();
+        return tokens >= capacity && lastRefillAt - lastUsedAt >= idleMillis;
+    }
+
+    private void refill() {
+        long now = System.currentTimeMillis();
+        tokens = Math.min(capacity, tokens + (now - lastRefillAt) * refillPerMillis);
+        lastRefillAt = now;
+    }
+}
@@ -0,0 +1,97 @@
+package com.aitravelplanner.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 线程池配置类，为耗时的AI生成任务提供独立、有界的执行器，避免占用Web请求线程
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${ai.generation.job.pool-size:4}")
+    private int jobPoolSize;
+
+    @Value("${ai.generation.job.queue-capacity:100}")
+    private int jobQueueCapacity;
+
+    @Value("${ai.generation.job.await-termination-seconds:60}")
+    private int jobAwaitTerminationSeconds;
+
+    @Value("${ai.generation.call.pool-size:16}")
+    private int callPoolSize;
+
+    @Value("${ai.generation.call.queue-capacity:200}")
+    private int callQueueCapacity;
+
+    @Value("${ai.generation.stream.pool-size:8}")
+    private int streamPoolSize;
+
+    @Value("${ai.llm.hedge.pool-size:32}")
+    private int hedgePoolSize;
+
+    @Bean(name = "tripGenerationJobExecutor")
+    public ThreadPoolTaskExecutor tripGenerationJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(jobPoolSize);
+        executor.setMaxPoolSize(jobPoolSize);
+        executor.setQueueCapacity(jobQueueCapacity);
+        executor.setThreadNamePrefix("trip-gen-job-");
+        // 关闭时等待进行中的任务执行完毕
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(jobAwaitTerminationSeconds);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 大模型调用专用线程池，用于并发执行同一行程的路线生成与预算分配生成
+     */
+    @Bean(name = "aiCallExecutor")
+    public ThreadPoolTaskExecutor aiCallExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(callPoolSize);
+        executor.setMaxPoolSize(callPoolSize);
+        executor.setQueueCapacity(callQueueCapacity);
+        executor.setThreadNamePrefix("ai-call-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(jobAwaitTerminationSeconds);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 流式（SSE）生成专用线程池，每个连接在生成期间占用一个线程
+     */
+    @Bean(name = "tripStreamExecutor")
+    public ThreadPoolTaskExecutor tripStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(streamPoolSize);
+        executor.setMaxPoolSize(streamPoolSize);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("trip-stream-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(jobAwaitTerminationSeconds);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 对冲请求线程池：开启对冲时主请求与对冲请求都在此执行，调用线程只等待先返回的结果；
+     * 不排队，线程用尽时不再对冲，直接在调用线程中执行
+     */
+    @Bean(name = "llmHedgeExecutor")
+    public ThreadPoolTaskExecutor llmHedgeExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(hedgePoolSize);
+        executor.setMaxPoolSize(hedgePoolSize);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("llm-hedge-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(jobAwaitTerminationSeconds);
+        executor.initialize();
+        return executor;
+    }
+}
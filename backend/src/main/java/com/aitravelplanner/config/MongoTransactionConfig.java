@@ -0,0 +1,20 @@
+package com.aitravelplanner.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
+
+/**
+ * MongoDB多文档事务配置，仅在开启生成结果事务写入时注册（事务需要副本集，单机部署不可用）
+ */
+@Configuration
+@ConditionalOnProperty(name = "ai.generation.persistence.transactional", havingValue = "true")
+public class MongoTransactionConfig {
+
+    @Bean
+    public MongoTransactionManager transactionManager(MongoDatabaseFactory databaseFactory) {
+        return new MongoTransactionManager(databaseFactory);
+    }
+}
@@ -0,0 +1,12 @@
+package com.aitravelplanner.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * 启用定时任务（生成模板预热等后台任务）
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
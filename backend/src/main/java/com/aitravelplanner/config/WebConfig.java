@@ -1,6 +1,8 @@
 package com.aitravelplanner.config;
 
+import com.aitravelplanner.controller.TripController;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -15,6 +17,7 @@ public class WebConfig implements WebMvcConfigurer {
         registry.addMapping("/**")
                 .allowedOrigins("*")
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
-                .allowedHeaders("*");
+                .allowedHeaders("*")
+                .exposedHeaders(TripController.NEXT_CURSOR_HEADER, HttpHeaders.RETRY_AFTER);
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.aitravelplanner.controller;
 
 import com.aitravelplanner.dto.BudgetAllocationRequest;
+import com.aitravelplanner.dto.BudgetAnalytics;
 import com.aitravelplanner.dto.ExpenseAddRequest;
 import com.aitravelplanner.model.Budget;
 import com.aitravelplanner.model.Expense;
@@ -40,6 +41,16 @@ public class BudgetController {
         }
     }
 
+    @GetMapping("/trip/{tripId}/analytics")
+    public ResponseEntity<?> getBudgetAnalytics(@PathVariable String tripId) {
+        try {
+            BudgetAnalytics analytics = budgetService.getBudgetAnalytics(tripId);
+            return ResponseEntity.ok(analytics);
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("获取预算分析失败: " + e.getMessage());
+        }
+    }
+
     @PostMapping("/trip/{tripId}/expenses")
     public ResponseEntity<?> addExpense(@PathVariable String tripId, @Valid @RequestBody ExpenseAddRequest request) {
         try {
@@ -0,0 +1,89 @@
+package com.aitravelplanner.controller;
+
+import com.aitravelplanner.llm.LlmResult;
+import com.aitravelplanner.llm.ReplayResponder;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 压测用的阿里百炼HTTP替身（仅 loadtest profile 下注册）：
+ * 请求与响应格式与DashScope文本生成接口一致，将 ali.bailian.api.url 指向本接口即可在不消耗额度的情况下
+ * 压测完整的HTTP客户端、解析与存储链路。
+ */
+@Profile("loadtest")
+@RestController
+@RequestMapping("/loadtest/dashscope")
+public class LoadTestLlmController {
+
+    @Autowired
+    private ReplayResponder replayResponder;
+
+    @PostMapping("/generation")
+    public ResponseEntity<?> generation(@RequestBody String body,
+                                        @RequestHeader(value = "X-DashScope-SSE", required = false) String sse) {
+        JSONObject request = JSON.parseObject(body);
+        String prompt = request.getJSONObject("input").getString("prompt");
+        JSONObject parameters = request.getJSONObject("parameters");
+        int maxTokens = parameters == null ? 0 : parameters.getIntValue("max_tokens");
+
+        if (!"enable".equals(sse)) {
+            try {
+                LlmResult result = replayResponder.respond(prompt, maxTokens);
+                return ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(JSON.toJSONString(Map.of(
+                                "output", Map.of("text", result.getText(), "finish_reason", result.getFinishReason()),
+                                "usage", usage(result))));
+            } catch (RuntimeException e) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(JSON.toJSONString(Map.of("code", "InternalError", "message", e.getMessage())));
+            }
+        }
+
+        StreamingResponseBody stream = (OutputStream out) -> {
+            AtomicInteger id = new AtomicInteger();
+            try {
+                LlmResult result = replayResponder.respondStream(prompt, maxTokens, delta -> writeEvent(out, id.incrementAndGet(),
+                        JSON.toJSONString(Map.of("output", Map.of("text", delta, "finish_reason", "null")))));
+                // 与真实接口一致，最后一个事件携带结束原因与累计用量
+                writeEvent(out, id.incrementAndGet(), JSON.toJSONString(Map.of(
+                        "output", Map.of("text", "", "finish_reason", result.getFinishReason()),
+                        "usage", usage(result))));
+            } catch (RuntimeException e) {
+                writeEvent(out, id.incrementAndGet(),
+                        JSON.toJSONString(Map.of("code", "InternalError", "message", e.getMessage())));
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.TEXT_EVENT_STREAM).body(stream);
+    }
+
+    private Map<String, Object> usage(LlmResult result) {
+        return Map.of("input_tokens", result.getInputTokens(), "output_tokens", result.getOutputTokens());
+    }
+
+    private void writeEvent(OutputStream out, int id, String data) {
+        try {
+            out.write(("id:" + id + "\nevent:result\ndata:" + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.aitravelplanner.controller;
+
+import com.aitravelplanner.admission.GenerationAdmission;
+import com.aitravelplanner.llm.LlmCallGuard;
+import com.aitravelplanner.llm.LlmHedger;
+import com.aitravelplanner.llm.LlmProvider;
+import com.aitravelplanner.repository.MongoIndexManager;
+import com.aitravelplanner.service.budget.BudgetReconciler;
+import com.aitravelplanner.service.budget.ExpenseWriteCombiner;
+import com.aitravelplanner.service.generation.GenerationCache;
+import com.aitravelplanner.service.generation.GenerationCoalescer;
+import com.aitravelplanner.service.generation.GenerationPrewarmer;
+import com.aitravelplanner.service.generation.GenerationStats;
+import com.aitravelplanner.service.generation.TokenAccountant;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 运行指标接口，用于观察AI生成链路的缓存、并发与调用情况
+ */
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    @Autowired
+    private GenerationCache generationCache;
+
+    @Autowired
+    private GenerationCoalescer generationCoalescer;
+
+    @Autowired
+    private GenerationStats generationStats;
+
+    @Autowired
+    private TokenAccountant tokenAccountant;
+
+    @Autowired
+    private GenerationPrewarmer generationPrewarmer;
+
+    @Autowired
+    private GenerationAdmission generationAdmission;
+
+    @Autowired
+    private LlmProvider llmProvider;
+
+    @Autowired
+    private LlmCallGuard llmCallGuard;
+
+    @Autowired
+    private LlmHedger llmHedger;
+
+    @Autowired
+    private MongoIndexManager mongoIndexManager;
+
+    @Autowired
+    private ExpenseWriteCombiner expenseWriteCombiner;
+
+    @Autowired
+    private BudgetReconciler budgetReconciler;
+
+    @GetMapping("/generation")
+    public ResponseEntity<Map<String, Object>> generationMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("modes", generationStats.getStats());
+        metrics.put("admission", generationAdmission.getStats());
+        metrics.put("cache", generationCache.getStats());
+        metrics.put("coalescing", generationCoalescer.getStats());
+        metrics.put("tokens", tokenAccountant.getStats());
+        metrics.put("prewarm", generationPrewarmer.getStats());
+        metrics.put("provider", llmProvider.getStats());
+        metrics.put("guard", llmCallGuard.getStats());
+        metrics.put("hedge", llmHedger.getStats());
+        return ResponseEntity.ok(metrics);
+    }
+
+    @GetMapping("/database")
+    public ResponseEntity<Map<String, Object>> databaseMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("indexes", mongoIndexManager.getStats());
+        metrics.put("expenseWrites", expenseWriteCombiner.getStats());
+        metrics.put("budgetReconcile", budgetReconciler.getStats());
+        return ResponseEntity.ok(metrics);
+    }
+}
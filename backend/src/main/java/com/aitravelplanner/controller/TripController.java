@@ -1,36 +1,45 @@
 package com.aitravelplanner.controller;
 
+import com.aitravelplanner.admission.AdmissionRejectedException;
+import com.aitravelplanner.admission.GenerationAdmission;
+import com.aitravelplanner.admission.RequestPriority;
 import com.aitravelplanner.dto.TripCreateRequest;
-import com.aitravelplanner.model.Budget;
-import com.aitravelplanner.model.Expense;
-import com.aitravelplanner.model.Trip;
+import com.aitravelplanner.dto.TripPage;
+import com.aitravelplanner.dto.TripSummary;
 import com.aitravelplanner.model.TravelRoute;
-import com.aitravelplanner.model.User;
+import com.aitravelplanner.model.Trip;
+import com.aitravelplanner.model.TripGenerationJob;
+import com.aitravelplanner.service.TripGenerationJobService;
+import com.aitravelplanner.service.TripGenerationListener;
+import com.aitravelplanner.service.TripGenerationService;
 import com.aitravelplanner.service.TripService;
-import com.aitravelplanner.service.TravelRouteService;
 import com.aitravelplanner.service.UserService;
-import com.aitravelplanner.service.BudgetService;
-import com.aitravelplanner.service.AliBaiLianService;
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.text.SimpleDateFormat;
+import java.net.URI;
 import java.util.*;
 
 @RestController
 @RequestMapping("/api/trips")
 public class TripController {
     private static final Logger logger = LoggerFactory.getLogger(TripController.class);
+
+    // 列表接口的下一页游标响应头
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
     
     @Autowired
     private TripService tripService;
@@ -39,13 +48,21 @@ public class TripController {
     private UserService userService;
     
     @Autowired
-    private TravelRouteService travelRouteService;
-    
+    private TripGenerationService tripGenerationService;
+
     @Autowired
-    private BudgetService budgetService;
-    
+    private TripGenerationJobService tripGenerationJobService;
+
+    @Autowired
+    private GenerationAdmission generationAdmission;
+
     @Autowired
-    private AliBaiLianService aliBaiLianService;
+    @Qualifier("tripStreamExecutor")
+    private TaskExecutor tripStreamExecutor;
+
+    @Value("${ai.generation.stream.emitter-timeout-millis:180000}")
+    private long streamTimeoutMillis;
+
     @PostMapping
     public ResponseEntity<Trip> createTrip(@Valid @RequestBody TripCreateRequest request) {
         try {
@@ -74,344 +91,152 @@ public class TripController {
         }
     }
     
-    // AI生成行程端点
+    // AI生成行程端点，async=true 时提交后台任务并立即返回任务ID
+    // 排队优先级由服务端根据登录用户判定，请求头 X-Request-Priority: bulk 只能主动降级
     @PostMapping("/ai-generate")
-    public ResponseEntity<String> aiGenerateTrip(@Valid @RequestBody TripCreateRequest request) {
+    public ResponseEntity<?> aiGenerateTrip(@Valid @RequestBody TripCreateRequest request,
+                                            @RequestParam(value = "async", defaultValue = "false") boolean async,
+                                            @RequestHeader(value = "X-Request-Priority", required = false) String priority) {
         try {
-            logger.info("收到AI生成行程请求，用户ID: {}, 目的地: {}", request.getUserId(), request.getDestination());
-            
-            // 1. 创建基本行程信息
-            Trip trip = new Trip();
-            trip.setUserId(request.getUserId());
-            trip.setTitle(request.getTitle());
-            trip.setDestination(request.getDestination());
-            trip.setStartDate(request.getStartDate());
-            trip.setEndDate(request.getEndDate());
-            trip.setDescription(request.getDescription() != null ? request.getDescription() : "AI生成的行程计划");
-            trip.setBudgetAmount(request.getBudgetAmount());
-            trip.setPeopleCount(request.getPeopleCount());
-            trip.setTravelPreferences(request.getTravelPreferences());
-            
-            // 保存基本行程信息
-            Trip createdTrip = tripService.createTrip(trip);
-            String tripId = createdTrip.getId(); // ✅ 一定要从数据库返回对象中取ID
-            logger.info("基本行程创建成功，行程ID: {}", tripId);
-            
-            // 2. 调用大模型API生成行程详细信息（这里使用模拟数据，实际项目中需要集成真实的大模型API）
-            List<TravelRoute> aiRoutes = generateRoutesWithAI(tripId, request);
-    
-            ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            logger.info("收到AI生成行程请求，用户ID: {}, 目的地: {}, 异步: {}", request.getUserId(), request.getDestination(), async);
 
-            // 打印原始结果
-            logger.info("=== AI生成行程路线 ===\n{}", mapper.writeValueAsString(aiRoutes));
+            if (async) {
+                // 后台任务的并发由任务线程池限制，这里只做单用户限流
+                generationAdmission.checkRate(request.getUserId());
+                TripGenerationJob job = tripGenerationJobService.submitJob(request);
+                Map<String, Object> body = new HashMap<>();
+                body.put("jobId", job.getId());
+                body.put("status", job.getStatus());
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .location(URI.create("/api/trips/ai-generate/jobs/" + job.getId()))
+                        .body(body);
+            }
 
-            // 3. 保存生成的路线信息
-            logger.info("使用行程ID: {} 保存路线信息", tripId);
-            for (TravelRoute route : aiRoutes) {
-                route.setTripId(tripId);
-                travelRouteService.createRoute(route);
+            String tripId;
+            GenerationAdmission.Permit permit = generationAdmission.acquire(request.getUserId(), resolvePriority(request, priority));
+            try (permit) {
+                tripId = tripGenerationService.generateTrip(request);
             }
-            logger.info("成功保存 {} 条旅行路线", aiRoutes.size());
-            
-            // 4. 使用预算分配API接口更新预算分配
-            Map<String, Double> allocations = generateBudgetAllocations(request.getBudgetAmount());
-            
-            // 调用预算分配API，使用相同的tripId变量
-            budgetService.updateBudgetAllocations(tripId, allocations);
-            logger.info("使用行程ID: {} 成功更新行程预算分配信息", tripId);
-            
             logger.info("使用行程ID: {} 完成AI行程生成，返回行程ID", tripId);
             return ResponseEntity.ok(tripId);
+        } catch (AdmissionRejectedException e) {
+            return tooManyRequests(e);
+        } catch (TaskRejectedException e) {
+            logger.warn("AI生成任务队列已满: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("生成任务繁忙，请稍后重试");
         } catch (Exception e) {
             logger.error("AI生成行程失败: {}", e.getMessage());
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
-    
-    // 使用阿里百炼大模型生成旅行路线
-    private List<TravelRoute> generateRoutesWithAI(String tripId, TripCreateRequest request) {
-        List<TravelRoute> routes = new ArrayList<>();
-        
+
+    // 只有携带有效登录令牌且为自己生成行程的请求才按交互请求排队，其余调用一律按批量处理
+    private RequestPriority resolvePriority(TripCreateRequest request, String header) {
+        boolean ownSession;
         try {
-            // 计算行程天数
-            long diffInMillies = request.getEndDate().getTime() - request.getStartDate().getTime();
-            int days = (int) (diffInMillies / (1000 * 60 * 60 * 24)) + 1;
-            
-            // 构建提示词
-            StringBuilder prompt = new StringBuilder();
-            prompt.append("请为我规划一段在")
-                  .append(request.getDestination())
-                  .append("的")
-                  .append(days)
-                  .append("天旅行行程。");
-            
-            if (request.getTravelPreferences() != null && !request.getTravelPreferences().isEmpty()) {
-                prompt.append(" 旅行偏好包括: ");
-                for (int i = 0; i < request.getTravelPreferences().size(); i++) {
-                    prompt.append(request.getTravelPreferences().get(i));
-                    if (i < request.getTravelPreferences().size() - 1) {
-                        prompt.append("、");
-                    }
-                }
-            }
-            
-            if (request.getSpecialNeeds() != null && !request.getSpecialNeeds().isEmpty()) {
-                prompt.append(" 特殊需求: ").append(request.getSpecialNeeds());
-            }
-            
-            prompt.append("\n\n请按以下JSON格式返回行程规划，确保返回内容是有效的JSON格式:")
-                  .append("\n{\n  \"routes\": [\n    {\n      \"day\": 1,\n      \"description\": \"第1天行程描述\",\n      \"transportation\": \"交通方式\",\n      \"attractions\": [\"景点1\", \"景点2\"],\n      \"attractionDetails\": [\n        {\"name\": \"景点1\", \"latitude\": 30.123456, \"longitude\": 120.123456, \"address\": \"地址1\"},\n        {\"name\": \"景点2\", \"latitude\": 30.234567, \"longitude\": 120.234567, \"address\": \"地址2\"}\n      ],\n      \"restaurants\": [\"餐厅1\", \"餐厅2\"],\n      \"accommodations\": [\"酒店1\"],\n      \"estimatedCost\": 500\n    }\n  ]\n}")
-                  .append("\n\n请确保返回的是纯JSON格式，不要包含其他文字说明。");
-            
-            // 调用阿里百炼API
-            String generatedContent = aliBaiLianService.generateContent(prompt.toString());
-            logger.info("阿里百炼API返回内容: {}", generatedContent);
-            
-            // 解析JSON响应
-            JSONObject jsonResponse = JSON.parseObject(generatedContent);
-            List<JSONObject> aiRoutes = jsonResponse.getJSONArray("routes").toJavaList(JSONObject.class);
-            
-            Date currentDate = new Date(request.getStartDate().getTime());
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-            
-            // 转换为TravelRoute对象
-            for (JSONObject aiRoute : aiRoutes) {
-                TravelRoute route = new TravelRoute();
-                route.setTripId(tripId);
-                route.setDayNumber(aiRoute.getInteger("day"));
-                route.setCreatedAt(new Date());
-                route.setUpdatedAt(new Date());
-                
-                // 设置基本信息
-                route.setDescription(aiRoute.getString("description"));
-                route.setTransportation(aiRoute.getString("transportation"));
-                
-                // 设置景点信息
-                List<String> attractions = aiRoute.getJSONArray("attractions").toJavaList(String.class);
-                route.setAttractions(attractions);
-                
-                // 设置景点详情
-                List<Map<String, Object>> attractionDes = new ArrayList<>();
-                if (aiRoute.containsKey("attractionDetails")) {
-                    List<JSONObject> details = aiRoute.getJSONArray("attractionDetails").toJavaList(JSONObject.class);
-                    for (JSONObject detail : details) {
-                        Map<String, Object> des = new HashMap<>();
-                        des.put("name", detail.getString("name"));
-                        des.put("latitude", detail.getDouble("latitude"));
-                        des.put("longitude", detail.getDouble("longitude"));
-                        des.put("address", detail.getString("address"));
-                        attractionDes.add(des);
-                    }
-                } else {
-                    // 如果没有经纬度信息，生成模拟数据
-                    for (int j = 0; j < attractions.size(); j++) {
-                        Map<String, Object> des = new HashMap<>();
-                        des.put("name", attractions.get(j));
-                        // 生成随机经纬度（作为备选）
-                        double baseLat = 30.0 + (Math.random() - 0.5) * 2;
-                        double baseLng = 120.0 + (Math.random() - 0.5) * 2;
-                        des.put("latitude", Math.round(baseLat * 1000000) / 1000000.0);
-                        des.put("longitude", Math.round(baseLng * 1000000) / 1000000.0);
-                        des.put("address", request.getDestination() + "市某区某路" + j + "号");
-                        attractionDes.add(des);
-                    }
-                }
-                route.setAttractionDes(attractionDes);
-                
-                // 设置餐厅信息
-                List<String> restaurants = aiRoute.getJSONArray("restaurants").toJavaList(String.class);
-                route.setRestaurants(restaurants);
-                
-                // 设置住宿信息
-                List<String> accommodations = aiRoute.getJSONArray("accommodations").toJavaList(String.class);
-                route.setAccommodations(accommodations);
-                
-                // 设置预计费用
-                route.setEstimatedCost(aiRoute.getDouble("estimatedCost"));
-                
-                routes.add(route);
-                
-                // 增加一天
-                Calendar calendar = Calendar.getInstance();
-                calendar.setTime(currentDate);
-                calendar.add(Calendar.DAY_OF_MONTH, 1);
-                currentDate = calendar.getTime();
-            }
-            
-        } catch (Exception e) {
-            logger.error("调用阿里百炼API生成路线失败: {}", e.getMessage());
-            // 出错时回退到模拟数据生成
-            logger.info("回退到模拟数据生成路线");
-            routes = generateMockRoutes(tripId, request);
+            ownSession = Objects.equals(userService.getCurrentUser().getId(), request.getUserId());
+        } catch (RuntimeException e) {
+            ownSession = false;
         }
-        
-        return routes;
+        return RequestPriority.resolve(ownSession, header);
     }
-    
-    // 备用的模拟数据生成方法
-    private List<TravelRoute> generateMockRoutes(String tripId, TripCreateRequest request) {
-        List<TravelRoute> routes = new ArrayList<>();
-        
-        // 计算行程天数
-        long diffInMillies = request.getEndDate().getTime() - request.getStartDate().getTime();
-        int days = (int) (diffInMillies / (1000 * 60 * 60 * 24)) + 1;
-        
-        // 生成每天的路线
-        Date currentDate = new Date(request.getStartDate().getTime());
-        for (int i = 1; i <= Math.min(days, 7); i++) { // 最多生成7天
-            TravelRoute route = new TravelRoute();
-            route.setTripId(tripId);
-            route.setDayNumber(i);
-            route.setCreatedAt(new Date());
-            route.setUpdatedAt(new Date());
-            
-            // 根据目的地和旅行偏好生成路线内容
-            String destination = request.getDestination();
-            List<String> preferences = request.getTravelPreferences();
-            
-            // 模拟生成交通信息
-            route.setTransportation("公共交通/步行");
-            
-            // 模拟生成景点信息
-            List<String> attractions = new ArrayList<>();
-            if (preferences != null && preferences.contains("文化")) {
-                attractions.add(destination + "博物馆");
-                attractions.add(destination + "历史街区");
-            } else if (preferences != null && preferences.contains("自然")) {
-                attractions.add(destination + "国家公园");
-                attractions.add(destination + "海滩/湖泊");
-            } else if (preferences != null && preferences.contains("美食")) {
-                attractions.add(destination + "美食街");
-                attractions.add(destination + "当地市场");
-            } else {
-                attractions.add(destination + "主要景点" + i);
-                attractions.add(destination + "热门观光地" + i);
-            }
-            route.setAttractions(attractions);
-            
-            // 模拟生成景点经纬度信息
-            List<Map<String, Object>> attractionDes = new ArrayList<>();
-            for (int j = 0; j < attractions.size(); j++) {
-                Map<String, Object> des = new HashMap<>();
-                des.put("name", attractions.get(j));
-                // 生成随机经纬度（模拟数据）
-                double baseLat = 30.0 + (Math.random() - 0.5) * 2;
-                double baseLng = 120.0 + (Math.random() - 0.5) * 2;
-                des.put("latitude", Math.round(baseLat * 1000000) / 1000000.0);
-                des.put("longitude", Math.round(baseLng * 1000000) / 1000000.0);
-                des.put("address", destination + "市某区某路" + j + "号");
-                attractionDes.add(des);
-            }
-            route.setAttractionDes(attractionDes);
-            
-            // 模拟生成餐厅信息
-            List<String> restaurants = new ArrayList<>();
-            restaurants.add("当地特色餐厅" + i);
-            restaurants.add("人气餐厅" + i);
-            route.setRestaurants(restaurants);
-            
-            // 模拟生成住宿信息
-            List<String> accommodations = new ArrayList<>();
-            if (preferences != null && preferences.contains("豪华")) {
-                accommodations.add(destination + "五星级酒店" + i);
-            } else if (preferences != null && preferences.contains("经济型")) {
-                accommodations.add(destination + "经济型酒店" + i);
-            } else {
-                accommodations.add(destination + "商务酒店" + i);
-            }
-            route.setAccommodations(accommodations);
-            
-            // 模拟生成描述
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-            route.setDescription("第" + i + "天行程安排（" + sdf.format(currentDate) + "）: 探索" + destination + "的主要景点和美食。");
-            
-            // 模拟生成预计费用
-            route.setEstimatedCost(request.getBudgetAmount() != null ? request.getBudgetAmount() / days : 500.0);
-            
-            routes.add(route);
-            
-            // 增加一天
-            Calendar calendar = Calendar.getInstance();
-            calendar.setTime(currentDate);
-            calendar.add(Calendar.DAY_OF_MONTH, 1);
-            currentDate = calendar.getTime();
+
+    // 流式AI生成行程端点：通过SSE逐天推送已生成并保存的路线
+    @PostMapping(value = "/ai-generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> aiGenerateTripStream(@Valid @RequestBody TripCreateRequest request,
+                                                  @RequestHeader(value = "X-Request-Priority", required = false) String priority) {
+        logger.info("收到流式AI生成行程请求，用户ID: {}, 目的地: {}", request.getUserId(), request.getDestination());
+        GenerationAdmission.Permit permit;
+        try {
+            permit = generationAdmission.acquire(request.getUserId(), resolvePriority(request, priority));
+        } catch (AdmissionRejectedException e) {
+            return tooManyRequests(e);
+        }
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        try {
+            tripStreamExecutor.execute(() -> {
+                try (permit) {
+                    String tripId = tripGenerationService.generateTripStreaming(request, new TripGenerationListener() {
+                        @Override
+                        public void onTripCreated(String tripId) {
+                            sendEvent(emitter, "trip", Map.of("tripId", tripId));
+                        }
+
+                        @Override
+                        public void onRoute(TravelRoute route) {
+                            sendEvent(emitter, "day", route);
+                        }
+
+                        @Override
+                        public void onBudgetAllocations(Map<String, Double> allocations) {
+                            sendEvent(emitter, "budget", allocations);
+                        }
+                    });
+                    sendEvent(emitter, "done", Map.of("tripId", tripId));
+                    emitter.complete();
+                } catch (Exception e) {
+                    logger.error("流式AI生成行程失败: {}", e.getMessage());
+                    sendEvent(emitter, "error", Map.of("message", "AI生成行程失败"));
+                    emitter.complete();
+                }
+            });
+        } catch (TaskRejectedException e) {
+            permit.close();
+            logger.warn("流式生成连接数已满: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .contentType(MediaType.TEXT_PLAIN)
+                    .body("生成任务繁忙，请稍后重试");
         }
-        
-        return routes;
+        return ResponseEntity.ok(emitter);
     }
-    
-    // 使用阿里百炼大模型生成预算分配信息
-    private Map<String, Double> generateBudgetAllocations(Double totalBudget) {
+
+    // 准入被拒绝时快速返回429，并告知客户端多久后重试
+    private ResponseEntity<String> tooManyRequests(AdmissionRejectedException e) {
+        logger.warn("AI生成请求未被准入: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+
+    // 推送SSE事件；客户端断开时仅记录日志，生成与保存继续进行
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
         try {
-            double total = totalBudget != null ? totalBudget : 5000.0;
-            
-            // 构建提示词
-            StringBuilder prompt = new StringBuilder();
-            prompt.append("请为一场总预算为")
-                  .append(total)
-                  .append("元的旅行生成预算分配方案。")
-                  .append("\n\n请按以下JSON格式返回预算分配，确保返回内容是有效的JSON格式:")
-                  .append("\n{")
-                  .append("\n  \"住宿\": 1500,")
-                  .append("\n  \"餐饮\": 1000,")
-                  .append("\n  \"交通\": 750,")
-                  .append("\n  \"门票\": 1000,")
-                  .append("\n  \"购物\": 500,")
-                  .append("\n  \"其他\": 250")
-                  .append("\n}")
-                  .append("\n\n请确保所有项的总和接近总预算，且返回的是纯JSON格式，不要包含其他文字说明。");
-            
-            // 调用阿里百炼API
-            String generatedContent = aliBaiLianService.generateContent(prompt.toString());
-            logger.info("阿里百炼API预算分配返回内容: {}", generatedContent);
-            
-            // 解析JSON响应
-            JSONObject jsonResponse = JSON.parseObject(generatedContent);
-            Map<String, Double> allocations = new HashMap<>();
-            
-            // 提取预算分配信息
-            allocations.put("住宿", jsonResponse.getDoubleValue("住宿"));
-            allocations.put("餐饮", jsonResponse.getDoubleValue("餐饮"));
-            allocations.put("交通", jsonResponse.getDoubleValue("交通"));
-            allocations.put("门票", jsonResponse.getDoubleValue("门票"));
-            allocations.put("购物", jsonResponse.getDoubleValue("购物"));
-            allocations.put("其他", jsonResponse.getDoubleValue("其他"));
-            
-            return allocations;
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
         } catch (Exception e) {
-            logger.error("调用阿里百炼API生成预算分配失败: {}", e.getMessage());
-            // 出错时回退到模拟数据生成
-            logger.info("回退到模拟预算分配");
-            return generateMockBudgetAllocations(totalBudget);
+            logger.debug("推送SSE事件 {} 失败: {}", name, e.getMessage());
         }
     }
-    
-    // 备用的模拟预算分配方法
-    private Map<String, Double> generateMockBudgetAllocations(Double totalBudget) {
-        Map<String, Double> allocations = new HashMap<>();
-        double total = totalBudget != null ? totalBudget : 5000.0;
-        
-        // 根据API文档要求的字段名生成分配信息，将Math.round结果转换为Double类型
-        allocations.put("住宿", (double)Math.round(total * 0.3 * 100) / 100);
-        allocations.put("餐饮", (double)Math.round(total * 0.2 * 100) / 100);
-        allocations.put("交通", (double)Math.round(total * 0.15 * 100) / 100);
-        allocations.put("门票", (double)Math.round(total * 0.2 * 100) / 100);
-        allocations.put("购物", (double)Math.round(total * 0.1 * 100) / 100);
-        allocations.put("其他", (double)Math.round(total * 0.05 * 100) / 100);
-        
-        return allocations;
+
+    // 查询AI生成任务状态
+    @GetMapping("/ai-generate/jobs/{jobId}")
+    public ResponseEntity<?> getGenerationJob(@PathVariable String jobId) {
+        try {
+            Optional<TripGenerationJob> job = tripGenerationJobService.getJob(jobId);
+            if (job.isPresent()) {
+                return ResponseEntity.ok(job.get());
+            }
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("生成任务不存在");
+        } catch (Exception e) {
+            logger.error("获取生成任务失败: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("获取生成任务失败");
+        }
     }
 
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<Trip>> getUserTrips(@PathVariable String userId) {
+    public ResponseEntity<List<TripSummary>> getUserTrips(@PathVariable String userId,
+                                                   @RequestParam(required = false) String cursor,
+                                                   @RequestParam(defaultValue = "20") int size) {
         try {
             // 直接根据用户ID获取行程，不需要认证和权限检查
             logger.info("获取用户 {} 的行程请求", userId);
             
-            List<Trip> trips = tripService.getUserTrips(userId);
-            logger.info("成功获取到用户 {} 的 {} 个行程", userId, trips.size());
-            return ResponseEntity.ok(trips);
+            TripPage page = tripService.getUserTrips(userId, cursor, size);
+            logger.info("成功获取到用户 {} 的 {} 个行程", userId, page.getTrips().size());
+            return withNextCursor(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("获取行程失败: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -475,14 +300,29 @@ public class TripController {
     }
 
     @GetMapping("/public/all")
-    public ResponseEntity<?> getPublicTrips() {
-        List<Trip> trips = tripService.getPublicTrips();
-        return ResponseEntity.ok(trips);
+    public ResponseEntity<?> getPublicTrips(@RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "20") int size) {
+        try {
+            return withNextCursor(tripService.getPublicTrips(cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @GetMapping("/public/search")
-    public ResponseEntity<?> searchPublicTrips(@RequestParam String destination) {
-        List<Trip> trips = tripService.searchPublicTrips(destination);
+    public ResponseEntity<?> searchPublicTrips(@RequestParam String destination,
+                                               @RequestParam(defaultValue = "0") int page,
+                                               @RequestParam(defaultValue = "20") int size) {
+        List<TripSummary> trips = tripService.searchPublicTrips(destination, page, size);
         return ResponseEntity.ok(trips);
     }
-}
\ No newline at end of file
+
+    // 响应体仍为行程数组，下一页游标放在响应头中，没有更多数据时不返回该响应头
+    private static ResponseEntity<List<TripSummary>> withNextCursor(TripPage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getTrips());
+    }
+}
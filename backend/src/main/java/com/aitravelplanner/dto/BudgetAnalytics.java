@@ -0,0 +1,28 @@
+package com.aitravelplanner.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预算分析：按类别对比预算分配与已花费金额，并给出按日期的花费，
+ * 全部来自行程上增量维护的汇总字段，不读取费用明细
+ */
+@Data
+public class BudgetAnalytics {
+    private Double totalBudget;
+    private Double spentAmount;
+    private Double remainingAmount;
+    private List<CategorySpend> categories;
+    private Map<String, Double> dailySpend; // 按日期（yyyy-MM-dd）升序
+
+    @Data
+    public static class CategorySpend {
+        private String category;
+        private Double allocated; // 未分配预算的类别为0
+        private Double spent;
+        private Double remaining;
+        private Double usageRate; // 已花费 / 分配金额，未分配预算时为null
+    }
+}
@@ -0,0 +1,16 @@
+package com.aitravelplanner.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 行程列表的一页，nextCursor 为空表示没有更多数据
+ */
+@Data
+@AllArgsConstructor
+public class TripPage {
+    private List<TripSummary> trips;
+    private String nextCursor;
+}
@@ -0,0 +1,32 @@
+package com.aitravelplanner.dto;
+
+import lombok.Data;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 行程列表使用的摘要，不包含预算（费用明细等）与检索字段；完整行程通过详情接口获取
+ */
+@Data
+public class TripSummary {
+    // 查询时只读取这些字段
+    public static final String[] FIELDS = {
+            "id", "userId", "title", "destination", "startDate", "endDate", "description", "tags",
+            "coverImage", "budgetAmount", "peopleCount", "travelPreferences", "createdAt", "updatedAt"};
+
+    private String id;
+    private String userId;
+    private String title;
+    private String destination;
+    private Date startDate;
+    private Date endDate;
+    private String description;
+    private List<String> tags;
+    private String coverImage;
+    private Double budgetAmount; // 预算金额
+    private Integer peopleCount; // 同行人数
+    private List<String> travelPreferences; // 旅行偏好
+    private Date createdAt;
+    private Date updatedAt;
+}
@@ -0,0 +1,83 @@
+package com.aitravelplanner.llm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * AIMD自适应并发限制：延迟正常且并发接近上限时加性增大上限，
+ * 延迟超过阈值或调用失败时乘性减小上限。超过上限的调用直接拒绝，不排队等待。
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdMillis;
+    private final double backoffRatio;
+
+    private double limit;
+    private int inFlight = 0;
+    private long rejected = 0;
+    private long decreases = 0;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      long latencyThresholdMillis, double backoffRatio) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdMillis = latencyThresholdMillis;
+        this.backoffRatio = backoffRatio;
+    }
+
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejected++;
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * 调用成功，根据耗时调整并发上限
+     */
+    public synchronized void onSuccess(long latencyMillis) {
+        if (latencyMillis > latencyThresholdMillis) {
+            decrease();
+        } else if (inFlight * 2 >= (int) limit) {
+            // 只有并发确实接近上限时才增大，避免空闲时上限无意义地膨胀；每轮约增大1
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        inFlight--;
+    }
+
+    public synchronized void onFailure() {
+        decrease();
+        inFlight--;
+    }
+
+    /**
+     * 未实际发起调用就归还许可（如被熔断器拒绝），不影响上限
+     */
+    public synchronized void release() {
+        inFlight--;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("limit", (int) limit);
+        snapshot.put("inFlight", inFlight);
+        snapshot.put("rejected", rejected);
+        snapshot.put("decreases", decreases);
+        snapshot.put("latencyThresholdMillis", latencyThresholdMillis);
+        return snapshot;
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+        decreases++;
+    }
+}
@@ -0,0 +1,147 @@
+package com.aitravelplanner.llm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 基于最近N次调用结果的熔断器。
+ * CLOSED：失败率（含慢调用）超过阈值时打开；OPEN：在等待时间内直接拒绝所有调用；
+ * HALF_OPEN：放行少量试探调用，全部成功则关闭，任一失败则重新打开。
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final boolean[] outcomes; // true 表示失败
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallMillis;
+    private final long openDurationMillis;
+    private final int halfOpenCalls;
+
+    private State state = State.CLOSED;
+    private int next = 0;
+    private int recorded = 0;
+    private int failuresInWindow = 0;
+    private long openedAt = 0;
+    private int halfOpenPermits = 0;
+    private int halfOpenSuccesses = 0;
+    private long rejected = 0;
+    private long openCount = 0;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold,
+                          long slowCallMillis, long openDurationMillis, int halfOpenCalls) {
+        this.outcomes = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallMillis = slowCallMillis;
+        this.openDurationMillis = openDurationMillis;
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDurationMillis) {
+                rejected++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits <= 0) {
+                rejected++;
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess(long latencyMillis) {
+        if (latencyMillis > slowCallMillis) {
+            onFailure();
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            halfOpenSuccesses++;
+            if (halfOpenSuccesses >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recorded >= minimumCalls
+                && (double) failuresInWindow / recorded >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * 调用被主动取消（如对冲请求中落后的一方），不计入成功或失败；半开状态下归还试探名额
+     */
+    public synchronized void onCancelled() {
+        if (state == State.HALF_OPEN) {
+            halfOpenPermits++;
+        }
+    }
+
+    public synchronized State getState() {
+        // 打开时间已到时对外显示为半开
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("state", getState().name());
+        snapshot.put("failureRate", recorded == 0 ? 0.0 : (double) failuresInWindow / recorded);
+        snapshot.put("windowCalls", recorded);
+        snapshot.put("rejected", rejected);
+        snapshot.put("openCount", openCount);
+        return snapshot;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == outcomes.length) {
+            if (outcomes[next]) {
+                failuresInWindow--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failuresInWindow++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        openCount++;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        next = 0;
+        recorded = 0;
+        failuresInWindow = 0;
+    }
+}
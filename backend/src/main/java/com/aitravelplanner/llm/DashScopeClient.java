@@ -0,0 +1,389 @@
+package com.aitravelplanner.llm;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONReader;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 阿里百炼（DashScope）文本生成HTTP客户端。
+ * 基于JDK HttpClient复用长连接（支持HTTP/2），通过信号量限制同时占用的连接数，
+ * 请求头与请求体模板在启动时构建，响应只按需读取 output.text 字段。
+ * 流式响应另有空闲与总时长上限，由看门狗在超限时关闭响应流，避免上游停止推送时调用线程一直阻塞。
+ */
+@Component
+@ConditionalOnProperty(name = "ai.llm.provider", havingValue = "dashscope", matchIfMissing = true)
+public class DashScopeClient implements LlmProvider {
+    private static final Logger logger = LoggerFactory.getLogger(DashScopeClient.class);
+
+    @Value("${ali.bailian.api.url:https://dashscope.aliyuncs.com/api/v1/services/aigc/text-generation/generation}")
+    private String apiUrl;
+
+    @Value("${ali.bailian.api.key}")
+    private String apiKey;
+
+    @Value("${ali.bailian.model:qwen-plus}")
+    private String model;
+
+    @Value("${ali.bailian.http.max-connections:32}")
+    private int maxConnections;
+
+    @Value("${ali.bailian.http.connect-timeout-millis:5000}")
+    private long connectTimeoutMillis;
+
+    @Value("${ali.bailian.http.read-timeout-millis:60000}")
+    private long readTimeoutMillis;
+
+    // 流式响应两次收到数据之间的最长间隔
+    @Value("${ali.bailian.http.stream-idle-timeout-millis:30000}")
+    private long streamIdleTimeoutMillis;
+
+    // 流式响应从发出请求到读完的最长时间
+    @Value("${ali.bailian.http.stream-timeout-millis:180000}")
+    private long streamTimeoutMillis;
+
+    @Value("${ali.bailian.http.acquire-timeout-millis:2000}")
+    private long acquireTimeoutMillis;
+
+    @Value("${ali.bailian.http.http2:true}")
+    private boolean http2;
+
+    private HttpClient httpClient;
+    private URI apiUri;
+    private Semaphore connectionPermits;
+    private ScheduledExecutorService streamWatchdog;
+    private String[] headers;
+    private String[] streamHeaders;
+    private String bodyPrefix;
+    private static final String PARAMETERS_SUFFIX = ",\"temperature\":0.7,\"top_p\":0.9},\"input\":{\"prompt\":";
+    private static final String STREAM_PARAMETERS_SUFFIX = ",\"temperature\":0.7,\"top_p\":0.9,\"incremental_output\":true},\"input\":{\"prompt\":";
+    private static final String BODY_SUFFIX = "}}";
+    private static final long WATCHDOG_INTERVAL_MILLIS = 500;
+
+    private final LatencyStats latencyStats = new LatencyStats(1024);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+    private final AtomicLong streamTimeouts = new AtomicLong();
+    private final AtomicLong requestTimeouts = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        this.httpClient = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .build();
+        this.apiUri = URI.create(apiUrl);
+        this.connectionPermits = new Semaphore(maxConnections, true);
+        this.streamWatchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dashscope-stream-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.headers = new String[] {
+                "Content-Type", "application/json",
+                "Authorization", "Bearer " + apiKey
+        };
+        this.streamHeaders = new String[] {
+                "Content-Type", "application/json",
+                "Authorization", "Bearer " + apiKey,
+                "Accept", "text/event-stream",
+                "X-DashScope-SSE", "enable"
+        };
+
+        // 请求体中除max_tokens与提示词外的部分固定不变，预先序列化
+        this.bodyPrefix = "{\"model\":" + JSON.toJSONString(model) + ",\"parameters\":{\"max_tokens\":";
+        logger.info("阿里百炼HTTP客户端初始化完成，协议: {}, 最大连接数: {}", http2 ? "HTTP/2" : "HTTP/1.1", maxConnections);
+    }
+
+    @Override
+    public String getName() {
+        return "dashscope";
+    }
+
+    /**
+     * 同步调用文本生成。HttpRequest.timeout 只限制等待响应头的时间，
+     * 这里对包括读取响应体在内的整个请求限定 read-timeout-millis，超时后取消请求并归还连接许可
+     * @param prompt 提示词
+     * @param maxTokens 最大生成token数
+     * @return 生成的文本与token用量
+     */
+    @Override
+    public LlmResult generate(String prompt, int maxTokens) {
+        HttpRequest request = HttpRequest.newBuilder(apiUri)
+                .headers(headers)
+                .timeout(Duration.ofMillis(readTimeoutMillis))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        bodyPrefix + maxTokens + PARAMETERS_SUFFIX + JSON.toJSONString(prompt) + BODY_SUFFIX))
+                .build();
+
+        acquire();
+        long start = System.currentTimeMillis();
+        CompletableFuture<HttpResponse<String>> future = null;
+        try {
+            future = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+            HttpResponse<String> response = future.get(readTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (response.statusCode() / 100 != 2) {
+                throw new RuntimeException("HTTP " + response.statusCode() + ": " + abbreviate(response.body()));
+            }
+            LlmResult result = new LlmResult();
+            readResponse(response.body(), result);
+            if (result.getText() == null) {
+                throw new RuntimeException("返回格式异常: " + abbreviate(response.body()));
+            }
+            return result;
+        } catch (TimeoutException e) {
+            failures.incrementAndGet();
+            requestTimeouts.incrementAndGet();
+            future.cancel(true);
+            throw new RuntimeException("请求超过 " + readTimeoutMillis + "ms 未完成", e);
+        } catch (ExecutionException e) {
+            failures.incrementAndGet();
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new RuntimeException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            failures.incrementAndGet();
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("调用被中断", e);
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            latencyStats.record(System.currentTimeMillis() - start);
+            connectionPermits.release();
+        }
+    }
+
+    /**
+     * 以SSE增量输出方式调用文本生成
+     * @param prompt 提示词
+     * @param maxTokens 最大生成token数
+     * @param onDelta 增量文本回调
+     * @return 完整的生成文本与token用量
+     */
+    @Override
+    public LlmResult generateStream(String prompt, int maxTokens, Consumer<String> onDelta) {
+        HttpRequest request = HttpRequest.newBuilder(apiUri)
+                .headers(streamHeaders)
+                .timeout(Duration.ofMillis(readTimeoutMillis))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        bodyPrefix + maxTokens + STREAM_PARAMETERS_SUFFIX + JSON.toJSONString(prompt) + BODY_SUFFIX))
+                .build();
+
+        acquire();
+        long start = System.currentTimeMillis();
+        CompletableFuture<HttpResponse<Stream<String>>> future = null;
+        ScheduledFuture<?> watchdog = null;
+        try {
+            future = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofLines());
+            HttpResponse<Stream<String>> response = future.get(readTimeoutMillis, TimeUnit.MILLISECONDS);
+            StringBuilder content = new StringBuilder();
+            LlmResult result = new LlmResult();
+            try (Stream<String> lines = response.body()) {
+                if (response.statusCode() / 100 != 2) {
+                    throw new RuntimeException("HTTP " + response.statusCode());
+                }
+                // 超过空闲或总时长上限时关闭响应流，阻塞中的读取随即结束
+                AtomicLong lastReceived = new AtomicLong(System.currentTimeMillis());
+                AtomicReference<String> expired = new AtomicReference<>();
+                watchdog = streamWatchdog.scheduleWithFixedDelay(() -> {
+                    long now = System.currentTimeMillis();
+                    String reason = now - start >= streamTimeoutMillis ? "流式响应超过总时长上限 " + streamTimeoutMillis + "ms"
+                            : now - lastReceived.get() >= streamIdleTimeoutMillis ? "流式响应超过 " + streamIdleTimeoutMillis + "ms 未收到数据"
+                            : null;
+                    if (reason != null && expired.compareAndSet(null, reason)) {
+                        response.body().close();
+                    }
+                }, WATCHDOG_INTERVAL_MILLIS, WATCHDOG_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+                Iterator<String> iterator = lines.iterator();
+                while (hasNextLine(iterator, expired)) {
+                    String line = iterator.next();
+                    lastReceived.set(System.currentTimeMillis());
+                    // 只处理数据行，忽略 id/event/注释行
+                    if (!line.startsWith("data:")) {
+                        continue;
+                    }
+                    // 每个事件的 text 为增量文本，usage 为截至当前的累计用量
+                    result.setText(null);
+                    readResponse(line.substring(5), result);
+                    String delta = result.getText();
+                    if (delta != null && !delta.isEmpty()) {
+                        content.append(delta);
+                        onDelta.accept(delta);
+                    }
+                }
+                if (expired.get() != null) {
+                    throw new StreamTimeoutException(expired.get());
+                }
+            }
+            result.setText(content.toString());
+            return result;
+        } catch (TimeoutException e) {
+            failures.incrementAndGet();
+            streamTimeouts.incrementAndGet();
+            future.cancel(true);
+            throw new RuntimeException("等待响应超过 " + readTimeoutMillis + "ms", e);
+        } catch (ExecutionException e) {
+            failures.incrementAndGet();
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new RuntimeException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            failures.incrementAndGet();
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("调用被中断", e);
+        } catch (StreamTimeoutException e) {
+            failures.incrementAndGet();
+            streamTimeouts.incrementAndGet();
+            throw new RuntimeException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            failures.incrementAndGet();
+            throw e;
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            latencyStats.record(System.currentTimeMillis() - start);
+            connectionPermits.release();
+        }
+    }
+
+    // 看门狗关闭响应流后，读取可能正常结束也可能抛出异常，两种情况都按超时处理
+    private static boolean hasNextLine(Iterator<String> iterator, AtomicReference<String> expired) {
+        try {
+            return iterator.hasNext();
+        } catch (UncheckedIOException e) {
+            if (expired.get() != null) {
+                throw new StreamTimeoutException(expired.get());
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("provider", getName());
+        stats.put("protocol", http2 ? "HTTP/2" : "HTTP/1.1");
+        stats.put("maxConnections", maxConnections);
+        stats.put("leased", maxConnections - connectionPermits.availablePermits());
+        stats.put("available", connectionPermits.availablePermits());
+        stats.put("pending", connectionPermits.getQueueLength());
+        stats.put("requests", requests.get());
+        stats.put("failures", failures.get());
+        stats.put("acquireTimeouts", acquireTimeouts.get());
+        stats.put("streamTimeouts", streamTimeouts.get());
+        stats.put("requestTimeouts", requestTimeouts.get());
+        stats.put("latency", latencyStats.snapshot());
+        return stats;
+    }
+
+    // 获取连接许可，超时则快速失败，避免在上游变慢时无限排队
+    private void acquire() {
+        requests.incrementAndGet();
+        try {
+            if (!connectionPermits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.incrementAndGet();
+                failures.incrementAndGet();
+                throw new RuntimeException("获取连接超时，当前连接数已达上限: " + maxConnections);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("获取连接被中断", e);
+        }
+    }
+
+    /**
+     * 顺序读取响应JSON，只提取 output.text/finish_reason 与 usage 中的token数，其余字段直接跳过；
+     * 错误响应中的 code/message 转为异常
+     */
+    private void readResponse(String json, LlmResult result) {
+        String code = null;
+        String message = null;
+        try (JSONReader reader = JSONReader.of(json)) {
+            if (!reader.nextIfObjectStart()) {
+                return;
+            }
+            while (!reader.nextIfObjectEnd()) {
+                String field = reader.readFieldName();
+                if ("output".equals(field) && reader.nextIfObjectStart()) {
+                    while (!reader.nextIfObjectEnd()) {
+                        String outputField = reader.readFieldName();
+                        if ("text".equals(outputField)) {
+                            result.setText(reader.readString());
+                        } else if ("finish_reason".equals(outputField)) {
+                            result.setFinishReason(reader.readString());
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                } else if ("usage".equals(field) && reader.nextIfObjectStart()) {
+                    while (!reader.nextIfObjectEnd()) {
+                        String usageField = reader.readFieldName();
+                        if ("input_tokens".equals(usageField)) {
+                            result.setInputTokens(reader.readInt32());
+                        } else if ("output_tokens".equals(usageField)) {
+                            result.setOutputTokens(reader.readInt32());
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                } else if ("code".equals(field)) {
+                    code = reader.readString();
+                } else if ("message".equals(field)) {
+                    message = reader.readString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+        if (result.getText() == null && code != null && !code.isEmpty()) {
+            throw new RuntimeException(code + ": " + message);
+        }
+    }
+
+    private static class StreamTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StreamTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    private String abbreviate(String body) {
+        if (body == null) {
+            return "";
+        }
+        return body.length() > 500 ? body.substring(0, 500) + "..." : body;
+    }
+}
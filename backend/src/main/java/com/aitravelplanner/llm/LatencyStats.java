@@ -0,0 +1,63 @@
+package com.aitravelplanner.llm;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 调用耗时统计：累计次数/总耗时/最大值，并保留最近N次样本用于计算分位数
+ */
+public class LatencyStats {
+
+    private final long[] samples;
+    private int next = 0;
+    private int size = 0;
+    private long count = 0;
+    private long totalMillis = 0;
+    private long maxMillis = 0;
+
+    public LatencyStats(int windowSize) {
+        this.samples = new long[windowSize];
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+        count++;
+        totalMillis += millis;
+        maxMillis = Math.max(maxMillis, millis);
+    }
+
+    /**
+     * 计算最近样本的分位数
+     * @param percentile 0~100
+     * @return 分位数耗时（毫秒），无样本时返回-1
+     */
+    public synchronized long percentile(double percentile) {
+        if (size == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        return sorted[Math.max(0, Math.min(index, size - 1))];
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", count);
+        snapshot.put("avgMillis", count == 0 ? 0 : totalMillis / count);
+        snapshot.put("maxMillis", maxMillis);
+        snapshot.put("p50Millis", percentile(50));
+        snapshot.put("p90Millis", percentile(90));
+        snapshot.put("p99Millis", percentile(99));
+        return snapshot;
+    }
+}
@@ -0,0 +1,146 @@
+package com.aitravelplanner.llm;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 大模型调用保护：自适应并发限制 + 熔断器。
+ * 超过并发上限或熔断器打开时立即抛出 {@link LlmUnavailableException}，不等待远程调用超时。
+ */
+@Component
+public class LlmCallGuard {
+    private static final Logger logger = LoggerFactory.getLogger(LlmCallGuard.class);
+
+    @Value("${ai.llm.limiter.initial-limit:8}")
+    private int initialLimit;
+
+    @Value("${ai.llm.limiter.min-limit:1}")
+    private int minLimit;
+
+    @Value("${ai.llm.limiter.max-limit:32}")
+    private int maxLimit;
+
+    @Value("${ai.llm.limiter.latency-threshold-millis:30000}")
+    private long latencyThresholdMillis;
+
+    @Value("${ai.llm.limiter.backoff-ratio:0.8}")
+    private double backoffRatio;
+
+    @Value("${ai.llm.breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${ai.llm.breaker.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${ai.llm.breaker.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${ai.llm.breaker.slow-call-millis:45000}")
+    private long slowCallMillis;
+
+    @Value("${ai.llm.breaker.open-duration-millis:30000}")
+    private long openDurationMillis;
+
+    @Value("${ai.llm.breaker.half-open-calls:2}")
+    private int halfOpenCalls;
+
+    private AdaptiveConcurrencyLimiter limiter;
+    private CircuitBreaker circuitBreaker;
+
+    @PostConstruct
+    public void init() {
+        this.limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, latencyThresholdMillis, backoffRatio);
+        this.circuitBreaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold,
+                slowCallMillis, openDurationMillis, halfOpenCalls);
+    }
+
+    public <T> T execute(Supplier<T> call) {
+        acquire();
+        return run(call, new CallerTime());
+    }
+
+    /**
+     * 流式调用：回调 onDelta 的耗时不计入调用延迟，回调抛出的异常属于调用方，不计为上游失败
+     */
+    public <T> T executeStream(Function<Consumer<String>, T> call, Consumer<String> onDelta) {
+        acquire();
+        CallerTime callerTime = new CallerTime();
+        Consumer<String> measured = delta -> {
+            long start = System.nanoTime();
+            try {
+                onDelta.accept(delta);
+            } catch (RuntimeException | Error e) {
+                callerTime.failed = true;
+                throw e;
+            } finally {
+                callerTime.nanos += System.nanoTime() - start;
+            }
+        };
+        return run(() -> call.apply(measured), callerTime);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limiter", limiter.snapshot());
+        stats.put("circuitBreaker", circuitBreaker.snapshot());
+        return stats;
+    }
+
+    private void acquire() {
+        if (!limiter.tryAcquire()) {
+            logger.warn("大模型并发已达上限 {}，直接降级", limiter.getLimit());
+            throw new LlmUnavailableException("大模型并发已达上限");
+        }
+        if (!circuitBreaker.allowRequest()) {
+            limiter.release();
+            logger.warn("大模型熔断器处于 {} 状态，直接降级", circuitBreaker.getState());
+            throw new LlmUnavailableException("大模型熔断中");
+        }
+    }
+
+    // 执行已取得许可的调用；许可在 finally 中确保归还，Error 等意外异常只归还许可、不计入统计
+    private <T> T run(Supplier<T> call, CallerTime callerTime) {
+        boolean settled = false;
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start - callerTime.nanos);
+            limiter.onSuccess(latency);
+            circuitBreaker.onSuccess(latency);
+            settled = true;
+            return result;
+        } catch (RuntimeException e) {
+            if (callerTime.failed || Thread.currentThread().isInterrupted()) {
+                // 调用方回调失败或调用被取消，不代表上游异常，不影响并发上限与熔断统计
+                limiter.release();
+                circuitBreaker.onCancelled();
+            } else {
+                limiter.onFailure();
+                circuitBreaker.onFailure();
+            }
+            settled = true;
+            throw e;
+        } finally {
+            if (!settled) {
+                limiter.release();
+                circuitBreaker.onCancelled();
+            }
+        }
+    }
+
+    // 调用方回调占用的时间及是否在回调中失败
+    private static class CallerTime {
+        private volatile long nanos;
+        private volatile boolean failed;
+    }
+}
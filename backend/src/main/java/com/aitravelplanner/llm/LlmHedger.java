@@ -0,0 +1,210 @@
+package com.aitravelplanner.llm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 对冲请求：调用在近期耗时的指定分位数内仍未返回时，再发起一次相同的请求，
+ * 取先成功返回的结果并取消另一个，用少量额外请求削减长尾延迟。
+ * 对冲次数受预算限制：每次主请求积累 budget-ratio 个额度，每次对冲消耗1个。
+ * 耗时按请求类型分别统计，路线类请求再按天数分档，不同规模的请求不共用对冲时机；
+ * 只记录主请求的耗时，主请求被对冲请求取代时记录其被取消时已等待的时间（实际耗时的下限）。
+ */
+@Component
+public class LlmHedger {
+    private static final Logger logger = LoggerFactory.getLogger(LlmHedger.class);
+
+    @Autowired
+    @Qualifier("llmHedgeExecutor")
+    private ThreadPoolTaskExecutor hedgeExecutor;
+
+    @Value("${ai.llm.hedge.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ai.llm.hedge.percentile:90}")
+    private double percentile;
+
+    @Value("${ai.llm.hedge.min-delay-millis:3000}")
+    private long minDelayMillis;
+
+    @Value("${ai.llm.hedge.min-samples:20}")
+    private int minSamples;
+
+    @Value("${ai.llm.hedge.budget-ratio:0.1}")
+    private double budgetRatio;
+
+    @Value("${ai.llm.hedge.max-credits:10}")
+    private double maxCredits;
+
+    // 路线类请求按天数分档，每档包含的天数
+    @Value("${ai.llm.hedge.day-bucket-size:2}")
+    private int dayBucketSize;
+
+    private static final int WINDOW_SIZE = 256;
+
+    private final Map<String, LatencyStats> latencyWindows = new ConcurrentHashMap<>();
+    private final AtomicLong primaries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+    private double credits = 0;
+
+    /**
+     * 执行一次可能被对冲的调用；未开启或线程池已满时直接在当前线程执行
+     * @param kind 请求类型（见 TokenAccountant），决定使用哪一组耗时统计
+     * @param days 行程天数，路线类请求按天数分档统计
+     */
+    public <T> T execute(String kind, int days, Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+
+        LatencyStats window = latencyWindows.computeIfAbsent(windowKey(kind, days), key -> new LatencyStats(WINDOW_SIZE));
+        AtomicBoolean sampled = new AtomicBoolean(false);
+        long primaryStart = System.currentTimeMillis();
+        ExecutorCompletionService<T> completion = new ExecutorCompletionService<>(hedgeExecutor.getThreadPoolExecutor());
+        List<Future<T>> futures = new ArrayList<>(2);
+        Future<T> primary;
+        try {
+            primary = completion.submit(() -> {
+                T result = call.get();
+                if (sampled.compareAndSet(false, true)) {
+                    window.record(System.currentTimeMillis() - primaryStart);
+                }
+                return result;
+            });
+        } catch (RejectedExecutionException e) {
+            return call.get();
+        }
+        futures.add(primary);
+        addCredits();
+
+        try {
+            long delay = hedgeDelayMillis(window);
+            Future<T> done = delay < 0 ? completion.take() : completion.poll(delay, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                if (tryConsumeCredit()) {
+                    try {
+                        futures.add(completion.submit(call::get));
+                        hedges.incrementAndGet();
+                        logger.info("大模型调用超过 {} 毫秒未返回，发起对冲请求", delay);
+                    } catch (RejectedExecutionException e) {
+                        logger.debug("对冲线程池已满，不发起对冲请求");
+                    }
+                } else {
+                    budgetExhausted.incrementAndGet();
+                }
+                done = completion.take();
+            }
+
+            // 先返回的一方失败时，继续等待另一方
+            int pending = futures.size();
+            while (true) {
+                pending--;
+                try {
+                    T result = done.get();
+                    if (done != primary) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    return result;
+                } catch (ExecutionException e) {
+                    if (pending == 0) {
+                        throw unwrap(e);
+                    }
+                    done = completion.take();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("调用被中断", e);
+        } finally {
+            // 主请求被取消时只知道它至少需要这么久，按下限记录，避免对冲结果把统计拉低
+            if (primary.cancel(true) && sampled.compareAndSet(false, true)) {
+                window.record(System.currentTimeMillis() - primaryStart);
+            }
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long primaryCount = primaries.get();
+        long hedgeCount = hedges.get();
+        stats.put("enabled", enabled);
+        stats.put("primaries", primaryCount);
+        stats.put("hedges", hedgeCount);
+        stats.put("hedgeRate", primaryCount == 0 ? 0.0 : (double) hedgeCount / primaryCount);
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("hedgeWinRate", hedgeCount == 0 ? 0.0 : (double) hedgeWins.get() / hedgeCount);
+        stats.put("budgetExhausted", budgetExhausted.get());
+        Map<String, Object> windows = new TreeMap<>();
+        latencyWindows.forEach((key, window) -> {
+            Map<String, Object> windowStats = new LinkedHashMap<>(window.snapshot());
+            windowStats.put("hedgeDelayMillis", hedgeDelayMillis(window));
+            windows.put(key, windowStats);
+        });
+        stats.put("latency", windows);
+        return stats;
+    }
+
+    // 预算请求规模固定；路线与合并请求的耗时随天数增长，按天数分档
+    private String windowKey(String kind, int days) {
+        if (days <= 0) {
+            return kind;
+        }
+        int size = Math.max(1, dayBucketSize);
+        int from = (days - 1) / size * size + 1;
+        return kind + ":" + from + "-" + (from + size - 1) + "天";
+    }
+
+    // 样本不足时不对冲
+    private long hedgeDelayMillis(LatencyStats window) {
+        if (window.getCount() < minSamples) {
+            return -1;
+        }
+        return Math.max(minDelayMillis, window.percentile(percentile));
+    }
+
+    private synchronized void addCredits() {
+        primaries.incrementAndGet();
+        credits = Math.min(maxCredits, credits + budgetRatio);
+    }
+
+    private synchronized boolean tryConsumeCredit() {
+        if (credits < 1) {
+            return false;
+        }
+        credits -= 1;
+        return true;
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new RuntimeException(cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,15 @@
+package com.aitravelplanner.llm;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 大模型文本生成提供方。通过 ai.llm.provider 选择实现：
+ * dashscope（默认，调用阿里百炼）或 replay（本地回放录制结果，用于压测）。
+ */
+public interface LlmProvider {
+    String getName();
+    LlmResult generate(String prompt, int maxTokens);
+    LlmResult generateStream(String prompt, int maxTokens, Consumer<String> onDelta);
+    Map<String, Object> getStats();
+}
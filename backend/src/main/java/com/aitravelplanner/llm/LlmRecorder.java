@@ -0,0 +1,43 @@
+package com.aitravelplanner.llm;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 将真实大模型响应按行追加到录制文件（JSON Lines），供回放提供方使用。未配置 ai.llm.record.path 时不录制。
+ */
+@Component
+public class LlmRecorder {
+    private static final Logger logger = LoggerFactory.getLogger(LlmRecorder.class);
+
+    @Value("${ai.llm.record.path:}")
+    private String recordPath;
+
+    public void record(String prompt, String text) {
+        if (recordPath == null || recordPath.isEmpty()) {
+            return;
+        }
+        JSONObject recording = new JSONObject();
+        recording.put("kind", ReplayResponder.classify(prompt));
+        recording.put("promptChars", prompt.length());
+        recording.put("text", text);
+        String line = recording.toJSONString() + System.lineSeparator();
+        synchronized (this) {
+            try {
+                Files.writeString(Path.of(recordPath), line, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                logger.warn("录制大模型响应失败: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.aitravelplanner.llm;
+
+import lombok.Data;
+
+/**
+ * 一次大模型调用的结果：生成文本与提供方返回的token用量
+ */
+@Data
+public class LlmResult {
+    private String text;
+    private Integer inputTokens; // 提示词token数，提供方未返回时为null
+    private Integer outputTokens; // 生成内容token数，提供方未返回时为null
+    private String finishReason; // stop 正常结束；length 达到max_tokens被截断
+
+    public boolean isTruncated() {
+        return "length".equals(finishReason);
+    }
+}
@@ -0,0 +1,12 @@
+package com.aitravelplanner.llm;
+
+/**
+ * 大模型调用被本地保护机制（并发限制、熔断）直接拒绝，调用方应立即走降级逻辑
+ */
+public class LlmUnavailableException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public LlmUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,43 @@
+package com.aitravelplanner.llm;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 本地回放提供方：不访问网络、不消耗API额度，按配置的延迟与错误率回放录制的响应
+ */
+@Component
+@ConditionalOnProperty(name = "ai.llm.provider", havingValue = "replay")
+public class ReplayLlmProvider implements LlmProvider {
+
+    @Autowired
+    private ReplayResponder replayResponder;
+
+    @Override
+    public String getName() {
+        return "replay";
+    }
+
+    @Override
+    public LlmResult generate(String prompt, int maxTokens) {
+        return replayResponder.respond(prompt, maxTokens);
+    }
+
+    @Override
+    public LlmResult generateStream(String prompt, int maxTokens, Consumer<String> onDelta) {
+        return replayResponder.respondStream(prompt, maxTokens, onDelta);
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("provider", getName());
+        stats.putAll(replayResponder.getStats());
+        return stats;
+    }
+}
@@ -0,0 +1,303 @@
+package com.aitravelplanner.llm;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 大模型响应回放引擎：按提示词类型回放录制的响应（无录制时按天数合成），
+ * 并按配置的延迟分布、错误率与输出规模模拟上游，用于离线压测控制器、解析与MongoDB吞吐。
+ */
+@Component
+public class ReplayResponder {
+    private static final Logger logger = LoggerFactory.getLogger(ReplayResponder.class);
+
+    public static final String KIND_ROUTES = "routes";
+    public static final String KIND_BUDGET = "budget";
+    public static final String KIND_COMBINED = "combined";
+    public static final String KIND_OUTLINE = "outline";
+
+    private static final Pattern DAYS_PATTERN = Pattern.compile("的(\\d+)天旅行");
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("只需规划第(\\d+)天至第(\\d+)天");
+    private static final Pattern OUTLINE_SEGMENT_PATTERN = Pattern.compile("第(\\d+)-(\\d+)天");
+    private static final Pattern BUDGET_PATTERN = Pattern.compile("总预算为(\\d+(?:\\.\\d+)?)元");
+    // 中文为主的文本按约1.5字符/token估算用量
+    private static final double CHARS_PER_TOKEN = 1.5;
+
+    @Value("${ai.llm.replay.recordings-path:}")
+    private String recordingsPath;
+
+    @Value("${ai.llm.replay.latency.distribution:lognormal}")
+    private String latencyDistribution;
+
+    @Value("${ai.llm.replay.latency.median-millis:8000}")
+    private long medianMillis;
+
+    @Value("${ai.llm.replay.latency.sigma:0.5}")
+    private double sigma;
+
+    @Value("${ai.llm.replay.latency.min-millis:500}")
+    private long minMillis;
+
+    @Value("${ai.llm.replay.latency.max-millis:60000}")
+    private long maxMillis;
+
+    @Value("${ai.llm.replay.error-rate:0.0}")
+    private double errorRate;
+
+    @Value("${ai.llm.replay.tokens-per-day:400}")
+    private int tokensPerDay;
+
+    @Value("${ai.llm.replay.stream-chunk-chars:40}")
+    private int streamChunkChars;
+
+    private final Map<String, List<String>> recordings = new HashMap<>();
+    private final LatencyStats latencyStats = new LatencyStats(1024);
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    @PostConstruct
+    public void loadRecordings() {
+        if (recordingsPath == null || recordingsPath.isEmpty()) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(Path.of(recordingsPath), StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JSONObject recording = JSON.parseObject(line);
+                recordings.computeIfAbsent(recording.getString("kind"), kind -> new ArrayList<>())
+                        .add(recording.getString("text"));
+            }
+            logger.info("加载大模型回放录制 {} 条，来源: {}", recordings.values().stream().mapToInt(List::size).sum(), recordingsPath);
+        } catch (IOException e) {
+            logger.error("加载大模型回放录制失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 根据提示词内容判断请求类型；分段概要的提示词先于路线与预算判断
+     */
+    public static String classify(String prompt) {
+        if (prompt.contains("\"segments\"")) {
+            return KIND_OUTLINE;
+        }
+        boolean routes = prompt.contains("\"routes\"");
+        boolean budget = prompt.contains("预算分配");
+        if (routes && budget) {
+            return KIND_COMBINED;
+        }
+        return routes ? KIND_ROUTES : KIND_BUDGET;
+    }
+
+    public LlmResult respond(String prompt, int maxTokens) {
+        long latency = sampleLatencyMillis();
+        sleep(latency);
+        return finish(prompt, maxTokens, latency);
+    }
+
+    public LlmResult respondStream(String prompt, int maxTokens, Consumer<String> onDelta) {
+        long latency = sampleLatencyMillis();
+        LlmResult result = finish(prompt, maxTokens, latency);
+        String text = result.getText();
+        // 首段延迟占一半，其余延迟均摊到各分段，模拟逐步输出
+        int chunks = Math.max(1, (text.length() + streamChunkChars - 1) / streamChunkChars);
+        long firstChunkDelay = latency / 2;
+        long chunkDelay = (latency - firstChunkDelay) / chunks;
+        sleep(firstChunkDelay);
+        for (int i = 0; i < text.length(); i += streamChunkChars) {
+            onDelta.accept(text.substring(i, Math.min(text.length(), i + streamChunkChars)));
+            sleep(chunkDelay);
+        }
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("calls", calls.get());
+        stats.put("errors", errors.get());
+        stats.put("distribution", latencyDistribution);
+        stats.put("errorRate", errorRate);
+        stats.put("recordings", recordings.values().stream().mapToInt(List::size).sum());
+        stats.put("latency", latencyStats.snapshot());
+        return stats;
+    }
+
+    // 按 max_tokens 截断输出并估算用量，截断时与真实接口一样返回 finish_reason=length
+    private LlmResult finish(String prompt, int maxTokens, long latency) {
+        String text = pickResponse(prompt, latency);
+        LlmResult result = new LlmResult();
+        int maxChars = (int) (maxTokens * CHARS_PER_TOKEN);
+        if (maxTokens > 0 && text.length() > maxChars) {
+            text = text.substring(0, maxChars);
+            result.setFinishReason("length");
+        } else {
+            result.setFinishReason("stop");
+        }
+        result.setText(text);
+        result.setInputTokens(estimateTokens(prompt));
+        result.setOutputTokens(estimateTokens(text));
+        return result;
+    }
+
+    private static int estimateTokens(String text) {
+        return (int) Math.ceil(text.length() / CHARS_PER_TOKEN);
+    }
+
+    private String pickResponse(String prompt, long latency) {
+        calls.incrementAndGet();
+        latencyStats.record(latency);
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            errors.incrementAndGet();
+            throw new RuntimeException("回放模拟上游错误");
+        }
+        String kind = classify(prompt);
+        List<String> recorded = recordings.get(kind);
+        if (recorded != null && !recorded.isEmpty()) {
+            return recorded.get(ThreadLocalRandom.current().nextInt(recorded.size()));
+        }
+        return synthesize(kind, prompt);
+    }
+
+    private long sampleLatencyMillis() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long latency;
+        switch (latencyDistribution) {
+            case "fixed":
+                latency = medianMillis;
+                break;
+            case "uniform":
+                latency = minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+                break;
+            default:
+                // 对数正态分布：大部分请求接近中位数，少量请求形成长尾
+                latency = (long) (medianMillis * Math.exp(sigma * random.nextGaussian()));
+        }
+        return Math.max(minMillis, Math.min(maxMillis, latency));
+    }
+
+    // 无录制时按请求的天数与预算合成结构合法的响应，单日描述长度由 tokens-per-day 控制
+    private String synthesize(String kind, String prompt) {
+        if (KIND_OUTLINE.equals(kind)) {
+            return synthesizeOutline(prompt);
+        }
+        JSONObject response = new JSONObject();
+        if (!KIND_BUDGET.equals(kind)) {
+            int firstDay = 1;
+            int lastDay = extractInt(DAYS_PATTERN, prompt, 3);
+            // 分段生成的提示词只需返回本段的天数
+            Matcher segment = SEGMENT_PATTERN.matcher(prompt);
+            if (segment.find()) {
+                firstDay = Integer.parseInt(segment.group(1));
+                lastDay = Integer.parseInt(segment.group(2));
+            }
+            List<Object> routes = new ArrayList<>();
+            for (int day = firstDay; day <= lastDay; day++) {
+                JSONObject route = new JSONObject();
+                route.put("day", day);
+                route.put("description", "第" + day + "天行程：" + "游览".repeat(Math.max(1, tokensPerDay / 4)));
+                route.put("transportation", "地铁/步行");
+                route.put("attractions", List.of("景点" + day + "A", "景点" + day + "B"));
+                List<Object> details = new ArrayList<>();
+                for (String suffix : List.of("A", "B")) {
+                    JSONObject detail = new JSONObject();
+                    detail.put("name", "景点" + day + suffix);
+                    detail.put("latitude", 30.0 + day * 0.01);
+                    detail.put("longitude", 120.0 + day * 0.01);
+                    detail.put("address", "某区某路" + day + "号");
+                    details.add(detail);
+                }
+                route.put("attractionDetails", details);
+                route.put("restaurants", List.of("餐厅" + day));
+                route.put("accommodations", List.of("酒店" + day));
+                route.put("estimatedCost", 500);
+                routes.add(route);
+            }
+            response.put("routes", routes);
+        }
+        if (!KIND_ROUTES.equals(kind)) {
+            double total = extractDouble(BUDGET_PATTERN, prompt, 5000.0);
+            JSONObject budget = new JSONObject();
+            budget.put("住宿", total * 0.3);
+            budget.put("餐饮", total * 0.2);
+            budget.put("交通", total * 0.15);
+            budget.put("门票", total * 0.2);
+            budget.put("购物", total * 0.1);
+            budget.put("其他", total * 0.05);
+            if (KIND_BUDGET.equals(kind)) {
+                return budget.toJSONString();
+            }
+            response.put("budget", budget);
+        }
+        return response.toJSONString();
+    }
+
+    // 按提示词中列出的各段天数范围合成分段概要，景点名称与合成的分段路线一致
+    private String synthesizeOutline(String prompt) {
+        List<int[]> ranges = new ArrayList<>();
+        Matcher matcher = OUTLINE_SEGMENT_PATTERN.matcher(prompt);
+        while (matcher.find()) {
+            ranges.add(new int[]{Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))});
+        }
+        if (ranges.isEmpty()) {
+            ranges.add(new int[]{1, extractInt(DAYS_PATTERN, prompt, 3)});
+        }
+        List<Object> segments = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            List<String> attractions = new ArrayList<>();
+            for (int day = ranges.get(i)[0]; day <= ranges.get(i)[1]; day++) {
+                attractions.add("景点" + day + "A");
+                attractions.add("景点" + day + "B");
+            }
+            JSONObject segment = new JSONObject();
+            segment.put("area", "区域" + (i + 1));
+            segment.put("attractions", attractions);
+            segments.add(segment);
+        }
+        JSONObject response = new JSONObject();
+        response.put("segments", segments);
+        return response.toJSONString();
+    }
+
+    private int extractInt(Pattern pattern, String text, int defaultValue) {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : defaultValue;
+    }
+
+    private double extractDouble(Pattern pattern, String text, double defaultValue) {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? Double.parseDouble(matcher.group(1)) : defaultValue;
+    }
+
+    private void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("回放被中断", e);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.aitravelplanner.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
+import org.springframework.data.annotation.Transient;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -9,7 +12,18 @@ import java.util.Map;
 public class Budget {
     private Double totalBudget;
     private Map<String, Double> allocations;  // 预算分配，如{"住宿": 1000, "餐饮": 500}
-    private List<Expense> expenses;
+    @Transient
+    private List<Expense> expenses; // 费用明细保存在 expense_buckets 集合中，只在预算接口中填充返回
     private Double spentAmount;
     private Double remainingAmount;
+    private Map<String, Double> spentByCategory; // 按类别累计的已花费金额，随费用增删增量更新
+    private Map<String, Double> spentByDay;      // 按日期（yyyy-MM-dd）累计的已花费金额
+
+    // 费用写入标记，由 BudgetTotals 维护，供后台核对判断是否有正在进行的写入
+    @JsonIgnore
+    private Integer pendingExpenseWrites; // 已开始、尚未完成的费用写入数
+    @JsonIgnore
+    private Long expenseVersion;          // 每次费用写入开始与结束时递增
+    @JsonIgnore
+    private Date expenseWriteAt;          // 最近一次费用写入开始或结束的时间
 }
\ No newline at end of file
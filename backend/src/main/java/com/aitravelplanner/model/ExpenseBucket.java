@@ -0,0 +1,26 @@
+package com.aitravelplanner.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 费用分桶：一个行程的费用按写入顺序分散在多个桶中，每个桶最多保存固定条数，
+ * 新增费用只追加到未满的桶，不再改写整个行程文档
+ */
+@Data
+@Document(collection = "expense_buckets")
+@CompoundIndex(name = "tripId_count", def = "{'tripId': 1, 'count': 1}") // 查找行程未满的桶
+@CompoundIndex(name = "tripId_expenseId", def = "{'tripId': 1, 'expenses._id': 1}") // 按费用ID定位所在的桶
+public class ExpenseBucket {
+    @Id
+    private String id;
+    private String tripId; // 关联到Trip表的外键
+    private Integer count; // 桶内费用条数
+    private List<Expense> expenses;
+    private Date createdAt;
+}
@@ -0,0 +1,22 @@
+package com.aitravelplanner.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Document(collection = "generation_cache")
+public class GenerationCacheEntry {
+    @Id
+    private String id; // 缓存键的SHA-256摘要
+    private String kind; // routes 或 budget
+    private String cacheKey; // 规范化后的可读缓存键
+    private List<TravelRoute> routes; // 路线模板，不含行程ID
+    private Map<String, Double> allocations; // 预算分配
+    private Double budgetAmount; // 生成时的预算金额，用于按比例换算
+    private Date createdAt; // TTL索引字段
+}
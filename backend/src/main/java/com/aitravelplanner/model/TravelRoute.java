@@ -2,6 +2,7 @@ package com.aitravelplanner.model;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
@@ -10,6 +11,7 @@ import java.util.Map;
 
 @Data
 @Document(collection = "travel_routes")
+@CompoundIndex(name = "tripId_dayNumber", def = "{'tripId': 1, 'dayNumber': 1}") // 按行程查询路线并按天排序
 public class TravelRoute {
     @Id
     private String id;
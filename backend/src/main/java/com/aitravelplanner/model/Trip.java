@@ -1,7 +1,9 @@
 package com.aitravelplanner.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
@@ -9,6 +11,9 @@ import java.util.List;
 
 @Data
 @Document(collection = "trips")
+@CompoundIndex(name = "userId_createdAt_id", def = "{'userId': 1, 'createdAt': -1, '_id': -1}") // 按用户分页查询行程
+@CompoundIndex(name = "createdAt_id", def = "{'createdAt': -1, '_id': -1}") // 全部行程分页
+@CompoundIndex(name = "destinationTerms_createdAt", def = "{'destinationTerms': 1, 'createdAt': -1}") // 目的地搜索
 public class Trip {
     @Id
     private String id;
@@ -27,4 +32,10 @@ public class Trip {
     private Double budgetAmount; // 预算金额
     private Integer peopleCount; // 同行人数
     private List<String> travelPreferences; // 旅行偏好
+
+    // 目的地搜索字段，由 destination 派生，保存行程时维护
+    @JsonIgnore
+    private String destinationKey; // 规范化后的目的地
+    @JsonIgnore
+    private List<String> destinationTerms; // 完整匹配、前缀与n-gram检索词
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.aitravelplanner.model;
+
+import com.aitravelplanner.dto.TripCreateRequest;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Data
+@Document(collection = "trip_generation_jobs")
+public class TripGenerationJob {
+    @Id
+    private String id;
+    private String userId;
+    private TripCreateRequest request; // 原始生成请求，用于重启后恢复任务
+    private Status status;
+    private String tripId; // 基本行程创建后回填，恢复时复用同一行程
+    private String errorMessage;
+    private Integer attempts; // 已执行次数
+    private String owner; // 当前执行该任务的实例
+    private Date leaseExpiresAt; // 执行租约到期时间，到期未续约视为执行实例已中断
+    private Date createdAt;
+    private Date updatedAt;
+    private Date startedAt;
+    private Date finishedAt;
+
+    public enum Status {
+        PENDING,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+}
@@ -2,6 +2,7 @@ package com.aitravelplanner.model;
 
 import lombok.Data;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Date;
@@ -11,7 +12,9 @@ import java.util.Date;
 public class User {
     @Id
     private String id;
+    @Indexed(name = "username_unique", unique = true)
     private String username;
+    @Indexed(name = "email_unique", unique = true)
     private String email;
     private String password;  // 加密后的密码
     private String fullName;
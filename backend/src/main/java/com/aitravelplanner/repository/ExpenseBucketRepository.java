@@ -0,0 +1,13 @@
+package com.aitravelplanner.repository;
+
+import com.aitravelplanner.model.ExpenseBucket;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ExpenseBucketRepository extends MongoRepository<ExpenseBucket, String> {
+    List<ExpenseBucket> findByTripIdOrderByIdAsc(String tripId);
+    void deleteByTripId(String tripId);
+}
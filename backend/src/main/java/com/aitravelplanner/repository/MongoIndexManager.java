@@ -0,0 +1,185 @@
+package com.aitravelplanner.repository;
+
+import com.aitravelplanner.model.ExpenseBucket;
+import com.aitravelplanner.model.TravelRoute;
+import com.aitravelplanner.model.Trip;
+import com.aitravelplanner.model.User;
+import com.aitravelplanner.service.search.DestinationSearchTerms;
+import com.mongodb.ExplainVerbosity;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MongoDB索引管理：索引在实体类上用 @Indexed / @CompoundIndex 声明，
+ * 启动时按声明创建（未开启 auto-index-creation），再逐个核对索引是否存在，
+ * 并对常用查询执行 explain，报告仍在集合扫描（COLLSCAN）的查询。
+ */
+@Component
+public class MongoIndexManager {
+    private static final Logger logger = LoggerFactory.getLogger(MongoIndexManager.class);
+
+    // 声明了索引的实体
+    private static final List<Class<?>> INDEXED_ENTITIES = List.of(Trip.class, TravelRoute.class, User.class, ExpenseBucket.class);
+
+    private static final String PROBE_VALUE = "index-probe";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${mongo.indexes.verify-queries:true}")
+    private boolean verifyQueries;
+
+    private final List<String> ensured = new ArrayList<>();
+    private final Map<String, String> failed = new LinkedHashMap<>();
+    private final List<String> missing = new ArrayList<>();
+    private final List<String> collectionScans = new ArrayList<>();
+    private volatile Date verifiedAt;
+
+    /**
+     * 启动后创建并核对声明的索引，先于其他依赖这些集合的启动任务执行
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    public synchronized void ensureIndexes() {
+        ensured.clear();
+        failed.clear();
+        missing.clear();
+        collectionScans.clear();
+
+        IndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        for (Class<?> entityClass : INDEXED_ENTITIES) {
+            ensureIndexes(entityClass, resolver);
+        }
+        if (verifyQueries) {
+            explainQueries();
+        }
+        verifiedAt = new Date();
+        logger.info("MongoDB索引检查完成，已确认 {} 个，失败 {} 个，集合扫描的查询 {} 个",
+                ensured.size(), failed.size() + missing.size(), collectionScans.size());
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("verifiedAt", verifiedAt);
+        stats.put("ensured", new ArrayList<>(ensured));
+        stats.put("failed", new LinkedHashMap<>(failed));
+        stats.put("missing", new ArrayList<>(missing));
+        stats.put("collectionScans", new ArrayList<>(collectionScans));
+        return stats;
+    }
+
+    private void ensureIndexes(Class<?> entityClass, IndexResolver resolver) {
+        String collection = mongoTemplate.getCollectionName(entityClass);
+        IndexOperations indexOps = mongoTemplate.indexOps(entityClass);
+        List<String> declared = new ArrayList<>();
+        for (IndexDefinition definition : resolver.resolveIndexFor(entityClass)) {
+            String name = collection + "." + definition.getIndexOptions().getString("name");
+            declared.add(name);
+            try {
+                indexOps.ensureIndex(definition);
+            } catch (Exception e) {
+                // 如已有重复数据导致唯一索引无法创建，不阻止启动，只记录并报告
+                failed.put(name, e.getMessage());
+                logger.error("创建索引 {} 失败: {}", name, e.getMessage());
+            }
+        }
+
+        try {
+            Collection<String> existing = new ArrayList<>();
+            for (IndexInfo info : indexOps.getIndexInfo()) {
+                existing.add(collection + "." + info.getName());
+            }
+            for (String name : declared) {
+                if (existing.contains(name)) {
+                    ensured.add(name);
+                } else if (!failed.containsKey(name)) {
+                    missing.add(name);
+                    logger.warn("声明的索引 {} 不存在", name);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("读取集合 {} 的索引失败: {}", collection, e.getMessage());
+        }
+    }
+
+    // 对各仓库的常用查询执行 explain（只生成执行计划，不执行查询）
+    private void explainQueries() {
+        explain("TripService.getUserTrips", Trip.class,
+                new Query(Criteria.where("userId").is(PROBE_VALUE))
+                        .with(Sort.by(Sort.Direction.DESC, "createdAt", "_id")));
+        explain("TripService.getPublicTrips", Trip.class,
+                new Query(Criteria.where("createdAt").lt(new Date()))
+                        .with(Sort.by(Sort.Direction.DESC, "createdAt", "_id")));
+        explain("TripService.searchPublicTrips", Trip.class,
+                new Query(Criteria.where("destinationTerms").is(DestinationSearchTerms.prefixTerm(PROBE_VALUE)))
+                        .with(Sort.by(Sort.Direction.DESC, "createdAt")));
+        explain("TravelRouteRepository.findByTripIdOrderByDayNumberAsc", TravelRoute.class,
+                new Query(Criteria.where("tripId").is(PROBE_VALUE)).with(Sort.by(Sort.Direction.ASC, "dayNumber")));
+        explain("UserRepository.findByEmail", User.class,
+                new Query(Criteria.where("email").is(PROBE_VALUE)));
+        explain("UserRepository.existsByUsername", User.class,
+                new Query(Criteria.where("username").is(PROBE_VALUE)));
+    }
+
+    private void explain(String queryName, Class<?> entityClass, Query query) {
+        try {
+            Document plan = mongoTemplate.getCollection(mongoTemplate.getCollectionName(entityClass))
+                    .find(query.getQueryObject())
+                    .sort(query.getSortObject())
+                    .explain(ExplainVerbosity.QUERY_PLANNER);
+            Object queryPlanner = plan.get("queryPlanner");
+            Object winningPlan = queryPlanner instanceof Document ? ((Document) queryPlanner).get("winningPlan") : null;
+            if (containsStage(winningPlan, "COLLSCAN")) {
+                collectionScans.add(queryName);
+                logger.warn("查询 {} 仍为集合扫描（COLLSCAN），请检查索引", queryName);
+            }
+        } catch (Exception e) {
+            logger.warn("获取查询 {} 的执行计划失败: {}", queryName, e.getMessage());
+        }
+    }
+
+    // 执行计划是嵌套的阶段树（inputStage / inputStages / queryPlan），递归查找指定阶段
+    private static boolean containsStage(Object node, String stage) {
+        if (node instanceof Document) {
+            Document document = (Document) node;
+            if (stage.equals(document.get("stage"))) {
+                return true;
+            }
+            for (Object child : document.values()) {
+                if (containsStage(child, stage)) {
+                    return true;
+                }
+            }
+        } else if (node instanceof List) {
+            for (Object child : (List<?>) node) {
+                if (containsStage(child, stage)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
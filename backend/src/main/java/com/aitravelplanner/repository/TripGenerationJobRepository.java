@@ -0,0 +1,9 @@
+package com.aitravelplanner.repository;
+
+import com.aitravelplanner.model.TripGenerationJob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface TripGenerationJobRepository extends MongoRepository<TripGenerationJob, String> {
+}
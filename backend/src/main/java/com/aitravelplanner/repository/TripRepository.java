@@ -9,5 +9,4 @@ import java.util.List;
 @Repository
 public interface TripRepository extends MongoRepository<Trip, String> {
     List<Trip> findByUserId(String userId);
-    List<Trip> findByDestinationContaining(String destination);
 }
\ No newline at end of file
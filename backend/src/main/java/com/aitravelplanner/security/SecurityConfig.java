@@ -52,6 +52,7 @@ public class SecurityConfig {
                 .requestMatchers("/api/trips/**").permitAll()  // 允许DELETE /api/trips/{tripId}不需要认证
                 .requestMatchers("/api/routes/**").permitAll()  // 允许所有/api/routes请求不需要认证
                 .requestMatchers("/api/budgets/**").permitAll()  // 允许所有/api/budgets请求不需要认证
+                .requestMatchers("/loadtest/**").permitAll()  // 压测用大模型模拟接口，仅在loadtest profile下注册
                 .anyRequest().authenticated();
 
         http.addFilterBefore(jwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
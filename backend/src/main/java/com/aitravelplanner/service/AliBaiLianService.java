@@ -1,95 +1,93 @@
 package com.aitravelplanner.service;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
+import com.aitravelplanner.llm.LlmCallGuard;
+import com.aitravelplanner.llm.LlmHedger;
+import com.aitravelplanner.llm.LlmProvider;
+import com.aitravelplanner.llm.LlmRecorder;
+import com.aitravelplanner.llm.LlmResult;
+import com.aitravelplanner.service.generation.TokenAccountant;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.function.Consumer;
 
 @Service
 public class AliBaiLianService {
     private static final Logger logger = LoggerFactory.getLogger(AliBaiLianService.class);
     
-    // 阿里百炼API地址
-    private static final String API_URL = "https://dashscope.aliyuncs.com/api/v1/services/aigc/text-generation/generation";
-    
-    // 从环境变量或配置文件中读取API Key
-    @Value("${ali.bailian.api.key}")
-    private String apiKey;
-    
-    private final RestTemplate restTemplate;
-    
-    public AliBaiLianService() {
-        this.restTemplate = new RestTemplate();
-    }
+    @Autowired
+    private LlmProvider llmProvider;
+
+    @Autowired
+    private LlmCallGuard llmCallGuard;
+
+    @Autowired
+    private LlmHedger llmHedger;
+
+    @Autowired
+    private LlmRecorder llmRecorder;
+
+    @Autowired
+    private TokenAccountant tokenAccountant;
     
     /**
-     * 调用阿里百炼大模型生成内容
+     * 调用阿里百炼大模型生成内容，max_tokens 按请求类型与天数估算；
+     * 输出因达到上限被截断时放大上限重试一次；开启对冲时慢调用会被对冲
+     * @param kind 请求类型（见 TokenAccountant）
+     * @param days 行程天数
      * @param prompt 提示词
-     * @return 生成的内容
+     * @return 生成的内容与token用量
      */
-    public String generateContent(String prompt) {
+    public LlmResult generate(String kind, int days, String prompt) {
         try {
-            // 设置请求头
-            HttpHeaders headers = new HttpHeaders();
-            headers.set("Content-Type", "application/json");
-            headers.set("Authorization", "Bearer " + apiKey);
-            
-            // 构建请求体
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", "qwen-plus"); // 使用通义千问模型
-            
-            Map<String, Object> parameters = new HashMap<>();
-            parameters.put("max_tokens", 2048);
-            parameters.put("temperature", 0.7);
-            parameters.put("top_p", 0.9);
-            
-            requestBody.put("parameters", parameters);
-            
-            Map<String, String> input = new HashMap<>();
-            input.put("prompt", prompt);
-            requestBody.put("input", input);
-            
-            // 发送请求
-            HttpEntity<String> requestEntity = new HttpEntity<>(
-                JSON.toJSONString(requestBody), 
-                headers
-            );
-            
-            logger.info("发送请求到阿里百炼API，提示词长度: {}", prompt.length());
-            
-            ResponseEntity<String> response = restTemplate.exchange(
-                API_URL, 
-                HttpMethod.POST, 
-                requestEntity, 
-                String.class
-            );
-            
-            // 解析响应
-            JSONObject responseJson = JSON.parseObject(response.getBody());
-            if (responseJson.containsKey("output") && responseJson.getJSONObject("output").containsKey("text")) {
-                String generatedText = responseJson.getJSONObject("output").getString("text");
-                logger.info("成功获取阿里百炼API响应，内容长度: {}", generatedText.length());
-                return generatedText;
-            } else {
-                logger.error("阿里百炼API返回格式异常: {}", response.getBody());
-                throw new RuntimeException("AI生成失败: 返回格式异常");
+            int maxTokens = tokenAccountant.maxTokensFor(kind, days);
+            logger.info("发送请求到阿里百炼API，提示词长度: {}，max_tokens: {}", prompt.length(), maxTokens);
+            LlmResult result = llmHedger.execute(kind, days, () -> llmCallGuard.execute(() -> llmProvider.generate(prompt, maxTokens)));
+            tokenAccountant.record(kind, days, maxTokens, result);
+            if (result.isTruncated()) {
+                int retryMaxTokens = tokenAccountant.retryMaxTokens(maxTokens);
+                if (retryMaxTokens > maxTokens) {
+                    logger.warn("输出被截断，以 max_tokens: {} 重试", retryMaxTokens);
+                    result = llmHedger.execute(kind, days, () -> llmCallGuard.execute(() -> llmProvider.generate(prompt, retryMaxTokens)));
+                    tokenAccountant.record(kind, days, retryMaxTokens, result);
+                }
             }
+            logger.info("成功获取阿里百炼API响应，内容长度: {}，token用量: {}/{}",
+                    result.getText().length(), result.getInputTokens(), result.getOutputTokens());
+            llmRecorder.record(prompt, result.getText());
+            return result;
         } catch (Exception e) {
             logger.error("调用阿里百炼API失败: {}", e.getMessage());
             throw new RuntimeException("AI生成失败: " + e.getMessage());
         }
     }
+
+    /**
+     * 以增量输出（SSE）方式调用阿里百炼大模型，每收到一段新生成的文本即回调
+     * @param kind 请求类型（见 TokenAccountant）
+     * @param days 行程天数
+     * @param prompt 提示词
+     * @param onDelta 增量文本回调
+     * @return 完整的生成内容与token用量
+     */
+    public LlmResult generateStream(String kind, int days, String prompt, Consumer<String> onDelta) {
+        try {
+            int maxTokens = tokenAccountant.maxTokensFor(kind, days);
+            logger.info("发送流式请求到阿里百炼API，提示词长度: {}，max_tokens: {}", prompt.length(), maxTokens);
+            LlmResult result = llmCallGuard.executeStream(measured -> llmProvider.generateStream(prompt, maxTokens, measured), onDelta);
+            tokenAccountant.record(kind, days, maxTokens, result);
+            logger.info("阿里百炼API流式响应结束，内容长度: {}，token用量: {}/{}",
+                    result.getText().length(), result.getInputTokens(), result.getOutputTokens());
+            llmRecorder.record(prompt, result.getText());
+            return result;
+        } catch (Exception e) {
+            logger.error("调用阿里百炼API流式接口失败: {}", e.getMessage());
+            throw new RuntimeException("AI生成失败: " + e.getMessage());
+        }
+    }
     
     /**
      * 生成旅行路线提示词
@@ -1,6 +1,7 @@
 package com.aitravelplanner.service;
 
 import com.aitravelplanner.dto.BudgetAllocationRequest;
+import com.aitravelplanner.dto.BudgetAnalytics;
 import com.aitravelplanner.dto.ExpenseAddRequest;
 import com.aitravelplanner.model.Budget;
 import com.aitravelplanner.model.Expense;
@@ -9,9 +10,12 @@ import java.util.Map;
 
 public interface BudgetService {
     Budget getTripBudget(String tripId);
+    BudgetAnalytics getBudgetAnalytics(String tripId);
     Expense addExpense(String tripId, ExpenseAddRequest request);
     void deleteExpense(String tripId, String expenseId);
     Budget updateBudgetAllocations(String tripId, Map<String, Double> allocations);
+    void applyBudgetAllocations(String tripId, Map<String, Double> allocations);
     Budget createBudgetAllocations(String tripId, BudgetAllocationRequest request);
     void updateBudgetTotals(String tripId);
+    void deleteExpensesByTripId(String tripId);
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import java.util.Optional;
 
 public interface TravelRouteService {
     TravelRoute createRoute(TravelRoute route);
+    List<TravelRoute> createRoutes(List<TravelRoute> routes);
     List<TravelRoute> getRoutesByTripId(String tripId);
     Optional<TravelRoute> getRouteById(String routeId);
     TravelRoute updateRoute(String routeId, TravelRoute route);
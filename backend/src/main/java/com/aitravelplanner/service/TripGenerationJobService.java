@@ -0,0 +1,11 @@
+package com.aitravelplanner.service;
+
+import com.aitravelplanner.dto.TripCreateRequest;
+import com.aitravelplanner.model.TripGenerationJob;
+
+import java.util.Optional;
+
+public interface TripGenerationJobService {
+    TripGenerationJob submitJob(TripCreateRequest request);
+    Optional<TripGenerationJob> getJob(String jobId);
+}
@@ -0,0 +1,14 @@
+package com.aitravelplanner.service;
+
+import com.aitravelplanner.model.TravelRoute;
+
+import java.util.Map;
+
+/**
+ * 流式生成行程时的进度回调
+ */
+public interface TripGenerationListener {
+    void onTripCreated(String tripId);
+    void onRoute(TravelRoute route);
+    void onBudgetAllocations(Map<String, Double> allocations);
+}
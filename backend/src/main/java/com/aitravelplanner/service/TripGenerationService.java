@@ -0,0 +1,12 @@
+package com.aitravelplanner.service;
+
+import com.aitravelplanner.dto.TripCreateRequest;
+import com.aitravelplanner.model.Trip;
+
+public interface TripGenerationService {
+    Trip createBaseTrip(TripCreateRequest request);
+    void generateTripDetails(String tripId, TripCreateRequest request);
+    String generateTrip(TripCreateRequest request);
+    String generateTripStreaming(TripCreateRequest request, TripGenerationListener listener);
+    void refreshTemplate(TripCreateRequest request);
+}
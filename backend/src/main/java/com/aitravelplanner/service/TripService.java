@@ -1,6 +1,8 @@
 package com.aitravelplanner.service;
 
 import com.aitravelplanner.dto.TripCreateRequest;
+import com.aitravelplanner.dto.TripPage;
+import com.aitravelplanner.dto.TripSummary;
 import com.aitravelplanner.model.Trip;
 
 import java.util.List;
@@ -8,11 +10,11 @@ import java.util.Optional;
 
 public interface TripService {
     Trip createTrip(Trip trip);
-    List<Trip> getUserTrips(String userId);
+    TripPage getUserTrips(String userId, String cursor, int size);
     List<Trip> getPublicTripsByUserId(String userId);
     Optional<Trip> getTripById(String tripId);
     Trip updateTrip(String tripId, Trip trip);
     void deleteTrip(String tripId);
-    List<Trip> getPublicTrips();
-    List<Trip> searchPublicTrips(String destination);
+    TripPage getPublicTrips(String cursor, int size);
+    List<TripSummary> searchPublicTrips(String destination, int page, int size);
 }
\ No newline at end of file
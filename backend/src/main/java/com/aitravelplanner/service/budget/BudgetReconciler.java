@@ -0,0 +1,267 @@
+package com.aitravelplanner.service.budget;
+
+import com.aitravelplanner.model.Budget;
+import com.aitravelplanner.model.ExpenseBucket;
+import com.aitravelplanner.model.Trip;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 预算汇总核对：行程上的已花费金额与按类别、按日期的汇总随费用增删增量更新，
+ * 后台定时按费用桶中的明细重新汇总并逐个比对，不一致时按明细修正。
+ * 有未完成费用写入（BudgetTotals.beginWrite 之后尚未 endWrite）的行程跳过，留到下一轮；
+ * 修正前会重新读取该行程并再次比对，写入时要求写入版本号与预算总额未变，读取之后开始的费用写入会使修正不生效。
+ * 写入标记超过 pending-timeout-millis 未清除时视为写入已中断，照常核对并清除标记。
+ * 尚未迁移内嵌费用（budget.expenses）的行程不在费用桶中保存全部明细，不参与核对。
+ */
+@Component
+public class BudgetReconciler {
+    private static final Logger logger = LoggerFactory.getLogger(BudgetReconciler.class);
+
+    // 与 BudgetTotals.DAY_PATTERN 对应的数据库日期格式
+    private static final String DAY_FORMAT = "%Y-%m-%d";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${budget.reconcile.enabled:true}")
+    private boolean enabled;
+
+    @Value("${budget.reconcile.batch-size:200}")
+    private int batchSize;
+
+    // 汇总金额与明细之差超过该值才视为不一致（浮点累加误差）
+    @Value("${budget.reconcile.tolerance:0.01}")
+    private double tolerance;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong tripsChecked = new AtomicLong();
+    private final AtomicLong tripsRepaired = new AtomicLong();
+    // 写入标记超过该时间未清除时，视为写入进程已中断
+    @Value("${budget.reconcile.pending-timeout-millis:600000}")
+    private long pendingTimeoutMillis;
+
+    private final AtomicLong repairsSkipped = new AtomicLong();
+    private final AtomicLong skippedInFlight = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile Date lastRunAt;
+    private volatile long lastDurationMillis;
+
+    @Scheduled(initialDelayString = "${budget.reconcile.initial-delay-millis:60000}",
+            fixedDelayString = "${budget.reconcile.interval-millis:3600000}")
+    public void scheduledReconcile() {
+        if (enabled) {
+            reconcileAll();
+        }
+    }
+
+    /**
+     * 按行程ID顺序分批核对所有有预算的行程，返回本轮修正的行程数
+     */
+    public int reconcileAll() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("上一轮预算汇总核对仍在进行，跳过本轮");
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        int checked = 0;
+        int repaired = 0;
+        try {
+            runs.incrementAndGet();
+            lastRunAt = new Date();
+            String lastId = null;
+            while (true) {
+                Criteria criteria = Criteria.where("budget").exists(true).and("budget.expenses").exists(false);
+                if (lastId != null) {
+                    criteria = criteria.and("_id").gt(ObjectId.isValid(lastId) ? new ObjectId(lastId) : lastId);
+                }
+                Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "_id")).limit(batchSize);
+                query.fields().include("budget");
+                List<Trip> trips = mongoTemplate.find(query, Trip.class);
+                if (trips.isEmpty()) {
+                    break;
+                }
+
+                List<String> tripIds = new ArrayList<>();
+                for (Trip trip : trips) {
+                    tripIds.add(trip.getId());
+                }
+                Map<String, Totals> actual = aggregate(tripIds);
+                for (Trip trip : trips) {
+                    checked++;
+                    tripsChecked.incrementAndGet();
+                    if (inFlight(trip.getBudget())) {
+                        skippedInFlight.incrementAndGet();
+                        continue;
+                    }
+                    if (drifted(trip.getBudget(), actual.getOrDefault(trip.getId(), new Totals())) && repair(trip.getId())) {
+                        repaired++;
+                    }
+                }
+                lastId = trips.get(trips.size() - 1).getId();
+            }
+            logger.info("预算汇总核对完成，核对 {} 个行程，修正 {} 个", checked, repaired);
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            logger.error("预算汇总核对失败，已核对 {} 个行程: {}", checked, e.getMessage());
+        } finally {
+            lastDurationMillis = System.currentTimeMillis() - start;
+            running.set(false);
+        }
+        return repaired;
+    }
+
+    /**
+     * 按费用明细核对并修正单个行程的预算汇总，返回是否做了修正
+     */
+    public boolean repair(String tripId) {
+        Query query = new Query(Criteria.where("_id").is(tripId).and("budget.expenses").exists(false));
+        query.fields().include("budget");
+        Trip trip = mongoTemplate.findOne(query, Trip.class);
+        if (trip == null) {
+            return false;
+        }
+        Budget budget = trip.getBudget() != null ? trip.getBudget() : new Budget();
+        if (inFlight(budget)) {
+            skippedInFlight.incrementAndGet();
+            return false;
+        }
+        Totals actual = aggregate(List.of(tripId)).getOrDefault(tripId, new Totals());
+        if (!drifted(budget, actual)) {
+            return false;
+        }
+
+        // 只在读取之后没有开始新的费用写入、预算总额也未变时覆盖，否则留到下一轮核对
+        Query unchanged = new Query(Criteria.where("_id").is(tripId)
+                .and(BudgetTotals.WRITE_VERSION).is(budget.getExpenseVersion())
+                .and(BudgetTotals.PENDING_WRITES).is(budget.getPendingExpenseWrites())
+                .and("budget.totalBudget").is(budget.getTotalBudget()));
+        UpdateResult result = mongoTemplate.updateFirst(unchanged, new Update()
+                .set(BudgetTotals.PENDING_WRITES, 0)
+                .inc(BudgetTotals.WRITE_VERSION, 1)
+                .set("budget.spentAmount", actual.spent)
+                .set("budget.remainingAmount", valueOf(budget.getTotalBudget()) - actual.spent)
+                .set("budget.spentByCategory", actual.byCategory)
+                .set("budget.spentByDay", actual.byDay), Trip.class);
+        if (result.getModifiedCount() == 0) {
+            repairsSkipped.incrementAndGet();
+            return false;
+        }
+        tripsRepaired.incrementAndGet();
+        logger.warn("行程 {} 的预算汇总与费用明细不一致，已按明细修正（已花费 {} -> {}）",
+                tripId, budget.getSpentAmount(), actual.spent);
+        return true;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running.get());
+        stats.put("runs", runs.get());
+        stats.put("lastRunAt", lastRunAt);
+        stats.put("lastDurationMillis", lastDurationMillis);
+        stats.put("tripsChecked", tripsChecked.get());
+        stats.put("tripsRepaired", tripsRepaired.get());
+        stats.put("repairsSkipped", repairsSkipped.get());
+        stats.put("skippedInFlight", skippedInFlight.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+
+    // 在数据库中按 行程/类别/日期 汇总费用明细，再按汇总字段的键规则合并
+    private Map<String, Totals> aggregate(List<String> tripIds) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("tripId").in(tripIds)),
+                Aggregation.unwind("expenses"),
+                Aggregation.project("tripId")
+                        .and("expenses.amount").as("amount")
+                        .and("expenses.category").as("category")
+                        .and(DateOperators.DateToString.dateOf("expenses.date").toString(DAY_FORMAT)
+                                .withTimezone(DateOperators.Timezone.valueOf(BudgetTotals.DAY_ZONE.getId()))).as("day"),
+                Aggregation.group("tripId", "category", "day").sum("amount").as("amount"));
+
+        Map<String, Totals> totals = new HashMap<>();
+        for (Document row : mongoTemplate.aggregate(aggregation, ExpenseBucket.class, Document.class).getMappedResults()) {
+            Document key = row.get("_id", Document.class);
+            Number amount = row.get("amount", Number.class);
+            double value = amount != null ? amount.doubleValue() : 0;
+            Totals tripTotals = totals.computeIfAbsent(key.getString("tripId"), id -> new Totals());
+            tripTotals.spent += value;
+            tripTotals.byCategory.merge(BudgetTotals.categoryKey(key.getString("category")), value, Double::sum);
+            String day = key.getString("day");
+            if (day != null) {
+                tripTotals.byDay.merge(day, value, Double::sum);
+            }
+        }
+        return totals;
+    }
+
+    // 有费用写入已开始但尚未结束，且未超时
+    private boolean inFlight(Budget budget) {
+        if (budget == null || budget.getPendingExpenseWrites() == null || budget.getPendingExpenseWrites() <= 0) {
+            return false;
+        }
+        Date writeAt = budget.getExpenseWriteAt();
+        return writeAt != null && System.currentTimeMillis() - writeAt.getTime() < pendingTimeoutMillis;
+    }
+
+    private boolean drifted(Budget budget, Totals actual) {
+        if (budget == null) {
+            budget = new Budget();
+        }
+        double expectedRemaining = valueOf(budget.getTotalBudget()) - actual.spent;
+        return Math.abs(valueOf(budget.getSpentAmount()) - actual.spent) > tolerance
+                || Math.abs(valueOf(budget.getRemainingAmount()) - expectedRemaining) > tolerance
+                || differs(budget.getSpentByCategory(), actual.byCategory)
+                || differs(budget.getSpentByDay(), actual.byDay);
+    }
+
+    // 缺少的键按0比较，已删除费用留下的0值不算不一致
+    private boolean differs(Map<String, Double> stored, Map<String, Double> actual) {
+        Map<String, Double> storedTotals = stored != null ? stored : Map.of();
+        Set<String> keys = new HashSet<>(storedTotals.keySet());
+        keys.addAll(actual.keySet());
+        for (String key : keys) {
+            if (Math.abs(valueOf(storedTotals.get(key)) - valueOf(actual.get(key))) > tolerance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double valueOf(Double value) {
+        return value != null ? value : 0;
+    }
+
+    private static class Totals {
+        private double spent;
+        private final Map<String, Double> byCategory = new LinkedHashMap<>();
+        private final Map<String, Double> byDay = new LinkedHashMap<>();
+    }
+}
@@ -0,0 +1,118 @@
+package com.aitravelplanner.service.budget;
+
+import com.aitravelplanner.model.Expense;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 行程预算汇总金额的增量更新，所有写入费用的路径共用，
+ * 保证已花费、剩余金额以及按类别、按日期的已花费金额同步变化。
+ * 一次费用写入分两步（行程汇总金额、费用桶），在行程的第一次与最后一次更新中分别用 beginWrite / endWrite 标记，
+ * 后台核对据此跳过写入尚未完成的行程，并以写入版本号判断读取之后是否有新的写入。
+ */
+public final class BudgetTotals {
+
+    // 按日期汇总时使用的时区
+    public static final ZoneId DAY_ZONE = ZoneId.of("Asia/Shanghai");
+    public static final String DAY_PATTERN = "yyyy-MM-dd";
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern(DAY_PATTERN).withZone(DAY_ZONE);
+
+    private static final String DEFAULT_CATEGORY = "其他";
+
+    public static final String PENDING_WRITES = "budget.pendingExpenseWrites";
+    public static final String WRITE_VERSION = "budget.expenseVersion";
+    public static final String WRITE_AT = "budget.expenseWriteAt";
+
+    private BudgetTotals() {
+    }
+
+    /**
+     * 记入一组费用：已花费金额增加，剩余金额相应减少，并累加到所属类别与日期
+     */
+    public static Update spend(Collection<Expense> expenses) {
+        return increments(expenses, 1);
+    }
+
+    /**
+     * 撤销或删除一组费用，与 spend 相反
+     */
+    public static Update refund(Collection<Expense> expenses) {
+        return increments(expenses, -1);
+    }
+
+    /**
+     * 在行程的第一步更新中标记一次费用写入开始
+     */
+    public static Update beginWrite(Update update) {
+        return update.inc(PENDING_WRITES, 1).inc(WRITE_VERSION, 1).set(WRITE_AT, new Date());
+    }
+
+    /**
+     * 在行程的最后一步更新中标记费用写入结束（成功或已撤销）
+     */
+    public static Update endWrite(Update update) {
+        return update.inc(PENDING_WRITES, -1).inc(WRITE_VERSION, 1).set(WRITE_AT, new Date());
+    }
+
+    /**
+     * 按类别汇总费用金额
+     */
+    public static Map<String, Double> byCategory(Collection<Expense> expenses) {
+        Map<String, Double> totals = new LinkedHashMap<>();
+        for (Expense expense : expenses) {
+            totals.merge(categoryKey(expense.getCategory()), amountOf(expense), Double::sum);
+        }
+        return totals;
+    }
+
+    /**
+     * 按日期汇总费用金额，没有日期的费用不计入
+     */
+    public static Map<String, Double> byDay(Collection<Expense> expenses) {
+        Map<String, Double> totals = new LinkedHashMap<>();
+        for (Expense expense : expenses) {
+            if (expense.getDate() != null) {
+                totals.merge(dayKey(expense.getDate()), amountOf(expense), Double::sum);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * 类别在汇总字段中的键：类别作为字段名写入，去掉字段路径中不能出现的"."与开头的"$"
+     */
+    public static String categoryKey(String category) {
+        String key = category == null ? "" : category.trim().replace('.', '·');
+        while (key.startsWith("$")) {
+            key = key.substring(1);
+        }
+        return key.isEmpty() ? DEFAULT_CATEGORY : key;
+    }
+
+    public static String dayKey(Date date) {
+        return DAY_FORMATTER.format(date.toInstant());
+    }
+
+    private static Update increments(Collection<Expense> expenses, int sign) {
+        double amount = 0;
+        for (Expense expense : expenses) {
+            amount += amountOf(expense);
+        }
+        Update update = new Update()
+                .inc("budget.spentAmount", sign * amount)
+                .inc("budget.remainingAmount", -sign * amount);
+        byCategory(expenses).forEach((category, total) -> update.inc("budget.spentByCategory." + category, sign * total));
+        byDay(expenses).forEach((day, total) -> update.inc("budget.spentByDay." + day, sign * total));
+        return update;
+    }
+
+    private static double amountOf(Expense expense) {
+        return expense.getAmount() != null ? expense.getAmount() : 0;
+    }
+}
@@ -0,0 +1,98 @@
+package com.aitravelplanner.service.budget;
+
+import com.aitravelplanner.model.Expense;
+import com.aitravelplanner.model.ExpenseBucket;
+import com.aitravelplanner.model.Trip;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 将旧版内嵌在行程文档 budget.expenses 中的费用迁移到 expense_buckets 集合：
+ * 启动后分批执行，按桶大小切分写入后，在同一次更新中从行程中移除费用列表并把这些费用累加到按类别、日期的汇总。
+ * 迁移时服务已在处理请求，新增费用会同时累加汇总金额，因此这里只做增量累加、不覆盖已花费金额，
+ * 且只在费用列表仍与读取时一致时生效；旧数据中已花费金额与明细的偏差由后台核对修正。
+ * 桶ID由行程ID与序号确定，中途失败后重新执行不会产生重复费用。
+ */
+@Component
+public class ExpenseBucketMigration {
+    private static final Logger logger = LoggerFactory.getLogger(ExpenseBucketMigration.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${budget.expenses.bucket-size:50}")
+    private int bucketSize;
+
+    @Value("${budget.expenses.migration-batch-size:100}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        String collection = mongoTemplate.getCollectionName(Trip.class);
+        long migrated = 0;
+        try {
+            while (true) {
+                Query query = new Query(Criteria.where("budget.expenses").exists(true)).limit(batchSize);
+                query.fields().include("budget");
+                List<Document> trips = mongoTemplate.find(query, Document.class, collection);
+                if (trips.isEmpty()) {
+                    break;
+                }
+                for (Document trip : trips) {
+                    migrateTrip(trip, collection);
+                    migrated++;
+                }
+            }
+            if (migrated > 0) {
+                logger.info("已将 {} 个行程的内嵌费用迁移到费用桶", migrated);
+            }
+        } catch (Exception e) {
+            logger.error("迁移内嵌费用失败，已完成 {} 个行程: {}", migrated, e.getMessage());
+        }
+    }
+
+    private void migrateTrip(Document trip, String collection) {
+        Object tripObjectId = trip.get("_id");
+        String tripId = tripObjectId.toString();
+        Document budget = trip.get("budget", Document.class);
+        List<Document> rawExpenses = budget.getList("expenses", Document.class, new ArrayList<>());
+
+        List<Expense> allExpenses = new ArrayList<>();
+        for (int from = 0, index = 0; from < rawExpenses.size(); from += bucketSize, index++) {
+            List<Expense> expenses = new ArrayList<>();
+            for (Document raw : rawExpenses.subList(from, Math.min(from + bucketSize, rawExpenses.size()))) {
+                Expense expense = mongoTemplate.getConverter().read(Expense.class, raw);
+                expenses.add(expense);
+            }
+            allExpenses.addAll(expenses);
+            ExpenseBucket bucket = new ExpenseBucket();
+            bucket.setId(tripId + "-legacy-" + index);
+            bucket.setTripId(tripId);
+            bucket.setCount(expenses.size());
+            bucket.setExpenses(expenses);
+            bucket.setCreatedAt(new Date());
+            mongoTemplate.save(bucket);
+        }
+
+        // 旧版本写入费用时已累加过 budget.spentAmount，这里只补上按类别、日期的汇总
+        Update update = new Update().unset("budget.expenses");
+        BudgetTotals.byCategory(allExpenses).forEach((category, total) -> update.inc("budget.spentByCategory." + category, total));
+        BudgetTotals.byDay(allExpenses).forEach((day, total) -> update.inc("budget.spentByDay." + day, total));
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(tripObjectId).and("budget.expenses").is(rawExpenses)),
+                update, collection);
+    }
+}
@@ -0,0 +1,207 @@
+package com.aitravelplanner.service.budget;
+
+import com.aitravelplanner.model.Expense;
+import com.aitravelplanner.model.ExpenseBucket;
+import com.aitravelplanner.model.Trip;
+import com.mongodb.client.result.UpdateResult;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 费用写入合并：同一行程在短时间窗口内的多次新增费用合并为一次写入
+ * （行程汇总金额一次 $inc，费用桶一次追加）。
+ * 一批费用不超过一个桶的容量，整批追加到同一个桶，追加要么全部生效要么全部失败，失败时撤销的金额与失败的请求一一对应。
+ * 窗口内第一个请求负责等待并写入整批，其余请求等待该批写入完成后才返回，写入失败时整批一起失败。
+ * 待写入的批次按行程ID分散在多个分段锁中，不同行程之间互不阻塞。
+ */
+@Component
+public class ExpenseWriteCombiner {
+    private static final Logger logger = LoggerFactory.getLogger(ExpenseWriteCombiner.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${budget.expenses.bucket-size:50}")
+    private int bucketSize;
+
+    @Value("${budget.expenses.combine.enabled:true}")
+    private boolean enabled;
+
+    // 批次从第一条费用到达起最多等待的时间
+    @Value("${budget.expenses.combine.window-millis:5}")
+    private long windowMillis;
+
+    // 达到该条数时不再等待，立即写入；不超过桶容量
+    @Value("${budget.expenses.combine.max-batch:50}")
+    private int maxBatch;
+
+    @Value("${budget.expenses.combine.stripes:64}")
+    private int stripeCount;
+
+    private Stripe[] stripes;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong combinedExpenses = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        maxBatch = Math.max(1, Math.min(maxBatch, bucketSize));
+        stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * 写入一条费用，返回时已写入数据库
+     * @throws RuntimeException 行程不存在或写入失败
+     */
+    public void write(String tripId, Expense expense) {
+        if (!enabled) {
+            flush(tripId, List.of(expense));
+            return;
+        }
+
+        Stripe stripe = stripeFor(tripId);
+        Batch batch;
+        boolean leader = false;
+        synchronized (stripe) {
+            batch = stripe.open.get(tripId);
+            if (batch == null) {
+                batch = new Batch();
+                stripe.open.put(tripId, batch);
+                leader = true;
+            }
+            batch.expenses.add(expense);
+            if (batch.expenses.size() >= maxBatch) {
+                // 批次已满，从分段中移除，后续请求开启新批次
+                stripe.open.remove(tripId);
+                batch.full.countDown();
+            }
+        }
+
+        if (leader) {
+            lead(tripId, stripe, batch);
+        }
+        try {
+            batch.done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long flushCount = flushes.get();
+        stats.put("enabled", enabled);
+        stats.put("flushes", flushCount);
+        stats.put("expenses", combinedExpenses.get());
+        stats.put("avgBatchSize", flushCount == 0 ? 0.0 : (double) combinedExpenses.get() / flushCount);
+        stats.put("largestBatch", largestBatch.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        return stats;
+    }
+
+    // 等待窗口结束或批次写满，然后写入整批
+    private void lead(String tripId, Stripe stripe, Batch batch) {
+        try {
+            batch.full.await(windowMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Expense> expenses;
+        synchronized (stripe) {
+            if (stripe.open.get(tripId) == batch) {
+                stripe.open.remove(tripId);
+            }
+            expenses = new ArrayList<>(batch.expenses);
+        }
+
+        try {
+            flush(tripId, expenses);
+            batch.done.complete(null);
+        } catch (Throwable e) {
+            // 包括 Error：整批一起失败，不能让等待该批的请求一直阻塞
+            batch.done.completeExceptionally(e);
+        }
+    }
+
+    // 先累加行程汇总金额（同时确认行程存在）并标记写入开始，再把费用分桶追加；追加失败时撤销汇总金额。
+    // 每批固定三次往返，与批内费用条数无关：行程与费用桶是两个集合，MongoDB 的批量写只能作用于单个集合，
+    // 不使用事务时无法合并为一次写入；行程的两次更新之间夹着费用桶的追加，写入标记（beginWrite / endWrite）
+    // 让后台核对在这期间不会按尚未追加的明细覆盖汇总金额，也使追加失败时可以撤销。
+    // 最后一次清除标记失败不影响结果，标记超时后核对任务照常处理
+    private void flush(String tripId, List<Expense> expenses) {
+        Query tripQuery = new Query(Criteria.where("_id").is(tripId));
+        UpdateResult result = mongoTemplate.updateFirst(tripQuery, BudgetTotals.beginWrite(BudgetTotals.spend(expenses)), Trip.class);
+        if (result.getMatchedCount() == 0) {
+            throw new RuntimeException("行程不存在");
+        }
+
+        try {
+            // 整批追加到剩余空间足够的桶中，没有时新建一个
+            mongoTemplate.upsert(
+                    new Query(Criteria.where("tripId").is(tripId).and("count").lte(bucketSize - expenses.size())),
+                    new Update().push("expenses").each(expenses.toArray()).inc("count", expenses.size())
+                            .setOnInsert("createdAt", new Date()),
+                    ExpenseBucket.class);
+        } catch (RuntimeException | Error e) {
+            failedFlushes.incrementAndGet();
+            logger.error("写入行程 {} 的 {} 条费用失败: {}", tripId, expenses.size(), e.getMessage());
+            mongoTemplate.updateFirst(tripQuery, BudgetTotals.endWrite(BudgetTotals.refund(expenses)), Trip.class);
+            throw e;
+        }
+
+        try {
+            mongoTemplate.updateFirst(tripQuery, BudgetTotals.endWrite(new Update()), Trip.class);
+        } catch (RuntimeException e) {
+            // 费用已写入，只是写入标记未清除，核对任务会在标记超时后照常核对该行程
+            logger.warn("清除行程 {} 的费用写入标记失败: {}", tripId, e.getMessage());
+        }
+
+        flushes.incrementAndGet();
+        combinedExpenses.addAndGet(expenses.size());
+        largestBatch.accumulateAndGet(expenses.size(), Math::max);
+    }
+
+    private Stripe stripeFor(String tripId) {
+        return stripes[(tripId.hashCode() & 0x7fffffff) % stripes.length];
+    }
+
+    private static class Stripe {
+        // 每个行程当前正在收集的批次
+        private final Map<String, Batch> open = new HashMap<>();
+    }
+
+    private static class Batch {
+        private final List<Expense> expenses = new ArrayList<>();
+        private final CountDownLatch full = new CountDownLatch(1);
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+    }
+}
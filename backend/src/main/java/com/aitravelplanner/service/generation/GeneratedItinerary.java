@@ -0,0 +1,18 @@
+package com.aitravelplanner.service.generation;
+
+import com.aitravelplanner.model.TravelRoute;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次生成得到的行程路线与预算分配
+ */
+@Data
+@AllArgsConstructor
+public class GeneratedItinerary {
+    private List<TravelRoute> routes;
+    private Map<String, Double> allocations;
+}
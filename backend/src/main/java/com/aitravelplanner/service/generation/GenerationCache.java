@@ -0,0 +1,307 @@
+package com.aitravelplanner.service.generation;
+
+import com.aitravelplanner.model.GenerationCacheEntry;
+import com.aitravelplanner.model.TravelRoute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AI生成结果两级缓存：进程内LRU（带过期时间）+ MongoDB集合（TTL索引自动过期）。
+ * 缓存中的路线为不含行程ID的模板，取出时复制并绑定到新的行程。
+ */
+@Component
+public class GenerationCache {
+    private static final Logger logger = LoggerFactory.getLogger(GenerationCache.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private GenerationSimilarityIndex similarityIndex;
+
+    @Value("${ai.generation.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.generation.cache.local-max-entries:1000}")
+    private int localMaxEntries;
+
+    @Value("${ai.generation.cache.local-ttl-seconds:3600}")
+    private long localTtlSeconds;
+
+    @Value("${ai.generation.cache.mongo-ttl-seconds:604800}")
+    private long mongoTtlSeconds;
+
+    @Value("${ai.generation.cache.budget-bucket-size:1000}")
+    private long budgetBucketSize;
+
+    private final Map<String, LocalEntry> localCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LocalEntry> eldest) {
+            return size() > localMaxEntries;
+        }
+    };
+
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong mongoHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong similarHits = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+
+    /**
+     * 启动后确保缓存集合的TTL索引存在
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureTtlIndex() {
+        try {
+            mongoTemplate.indexOps(GenerationCacheEntry.class)
+                    .ensureIndex(new Index().on("createdAt", Sort.Direction.ASC)
+                            .expire(Duration.ofSeconds(mongoTtlSeconds))
+                            .named("createdAt_ttl"));
+        } catch (Exception e) {
+            logger.error("创建生成缓存TTL索引失败: {}", e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getBudgetBucketSize() {
+        return budgetBucketSize;
+    }
+
+    /**
+     * 读取缓存的路线并绑定到指定行程；精确键未命中时复用近似请求的路线
+     */
+    public Optional<List<TravelRoute>> getRoutes(GenerationCacheKey key, String tripId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        // 近似命中同样计入命中，精确与近似都未命中时才记一次未命中
+        Optional<GenerationCacheEntry> entry = find(key.getId(), key.toString());
+        if (entry.isEmpty()) {
+            entry = lookupSimilar(key);
+        }
+        if (entry.isEmpty()) {
+            misses.incrementAndGet();
+        }
+        return entry.map(found -> bindRoutes(found.getRoutes(), tripId));
+    }
+
+    public void putRoutes(GenerationCacheKey key, List<TravelRoute> routes) {
+        if (routes == null || routes.isEmpty()) {
+            return;
+        }
+        GenerationCacheEntry entry = newEntry(key);
+        entry.setRoutes(bindRoutes(routes, null));
+        store(entry);
+        similarityIndex.add(key);
+    }
+
+    /**
+     * 读取缓存的预算分配，并按当前预算金额等比例换算
+     */
+    public Optional<Map<String, Double>> getAllocations(GenerationCacheKey key, Double budgetAmount) {
+        return lookup(key).map(entry -> scaleAllocations(entry, budgetAmount));
+    }
+
+    public void putAllocations(GenerationCacheKey key, Double budgetAmount, Map<String, Double> allocations) {
+        if (allocations == null || allocations.isEmpty()) {
+            return;
+        }
+        GenerationCacheEntry entry = newEntry(key);
+        entry.setAllocations(new HashMap<>(allocations));
+        entry.setBudgetAmount(budgetAmount);
+        store(entry);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hits = localHits.get() + mongoHits.get();
+        long total = hits + misses.get();
+        stats.put("enabled", enabled);
+        stats.put("localHits", localHits.get());
+        stats.put("mongoHits", mongoHits.get());
+        stats.put("misses", misses.get());
+        stats.put("similarHits", similarHits.get());
+        stats.put("similarity", similarityIndex.getStats());
+        stats.put("puts", puts.get());
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hits / total);
+        synchronized (localCache) {
+            stats.put("localSize", localCache.size());
+        }
+        return stats;
+    }
+
+    /**
+     * 查询缓存条目在MongoDB中的写入时间，用于判断预热模板是否需要刷新；不计入命中统计
+     */
+    public Optional<Date> getCreatedAt(GenerationCacheKey key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        try {
+            Query query = new Query(Criteria.where("_id").is(key.getId()));
+            query.fields().include("createdAt");
+            GenerationCacheEntry entry = mongoTemplate.findOne(query, GenerationCacheEntry.class);
+            return Optional.ofNullable(entry).map(GenerationCacheEntry::getCreatedAt);
+        } catch (Exception e) {
+            logger.warn("读取生成缓存写入时间失败，缓存键: {}, 错误: {}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 复制路线列表并绑定到指定行程，tripId为null时生成不含行程信息的模板
+     */
+    public static List<TravelRoute> bindRoutes(List<TravelRoute> routes, String tripId) {
+        List<TravelRoute> bound = new ArrayList<>(routes.size());
+        Date now = new Date();
+        for (TravelRoute source : routes) {
+            TravelRoute route = new TravelRoute();
+            route.setTripId(tripId);
+            route.setDayNumber(source.getDayNumber());
+            route.setTransportation(source.getTransportation());
+            route.setAttractions(source.getAttractions() != null ? new ArrayList<>(source.getAttractions()) : null);
+            if (source.getAttractionDes() != null) {
+                List<Map<String, Object>> attractionDes = new ArrayList<>();
+                for (Map<String, Object> des : source.getAttractionDes()) {
+                    attractionDes.add(new HashMap<>(des));
+                }
+                route.setAttractionDes(attractionDes);
+            }
+            route.setRestaurants(source.getRestaurants() != null ? new ArrayList<>(source.getRestaurants()) : null);
+            route.setAccommodations(source.getAccommodations() != null ? new ArrayList<>(source.getAccommodations()) : null);
+            route.setDescription(source.getDescription());
+            route.setEstimatedCost(source.getEstimatedCost());
+            route.setCreatedAt(now);
+            route.setUpdatedAt(now);
+            bound.add(route);
+        }
+        return bound;
+    }
+
+    private Optional<GenerationCacheEntry> lookup(GenerationCacheKey key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        Optional<GenerationCacheEntry> entry = find(key.getId(), key.toString());
+        if (entry.isEmpty()) {
+            misses.incrementAndGet();
+        }
+        return entry;
+    }
+
+    // 按近似重复索引查找，索引中已失效的条目顺便移除
+    private Optional<GenerationCacheEntry> lookupSimilar(GenerationCacheKey key) {
+        Optional<String> similarId = similarityIndex.findSimilar(key);
+        if (similarId.isEmpty()) {
+            return Optional.empty();
+        }
+        Optional<GenerationCacheEntry> entry = find(similarId.get(), similarId.get());
+        if (entry.isPresent()) {
+            similarHits.incrementAndGet();
+        } else {
+            similarityIndex.remove(similarId.get());
+        }
+        return entry;
+    }
+
+    private Optional<GenerationCacheEntry> find(String id, String label) {
+        long now = System.currentTimeMillis();
+        synchronized (localCache) {
+            LocalEntry local = localCache.get(id);
+            if (local != null) {
+                if (local.expiresAt > now) {
+                    localHits.incrementAndGet();
+                    return Optional.of(local.entry);
+                }
+                localCache.remove(id);
+            }
+        }
+
+        try {
+            GenerationCacheEntry entry = mongoTemplate.findById(id, GenerationCacheEntry.class);
+            // TTL索引按分钟级别清理，读取时再校验一次是否过期
+            if (entry != null && entry.getCreatedAt() != null
+                    && entry.getCreatedAt().getTime() + mongoTtlSeconds * 1000 > now) {
+                mongoHits.incrementAndGet();
+                putLocal(entry);
+                return Optional.of(entry);
+            }
+        } catch (Exception e) {
+            logger.warn("读取生成缓存失败，缓存键: {}, 错误: {}", label, e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    private GenerationCacheEntry newEntry(GenerationCacheKey key) {
+        GenerationCacheEntry entry = new GenerationCacheEntry();
+        entry.setId(key.getId());
+        entry.setKind(key.getKind());
+        entry.setCacheKey(key.getValue());
+        entry.setCreatedAt(new Date());
+        return entry;
+    }
+
+    private void store(GenerationCacheEntry entry) {
+        if (!enabled) {
+            return;
+        }
+        putLocal(entry);
+        puts.incrementAndGet();
+        try {
+            mongoTemplate.save(entry);
+        } catch (Exception e) {
+            logger.warn("写入生成缓存失败，缓存键: {}, 错误: {}", entry.getCacheKey(), e.getMessage());
+        }
+    }
+
+    private void putLocal(GenerationCacheEntry entry) {
+        synchronized (localCache) {
+            localCache.put(entry.getId(), new LocalEntry(entry, System.currentTimeMillis() + localTtlSeconds * 1000));
+        }
+    }
+
+    private Map<String, Double> scaleAllocations(GenerationCacheEntry entry, Double budgetAmount) {
+        Map<String, Double> allocations = new HashMap<>(entry.getAllocations());
+        Double cachedBudget = entry.getBudgetAmount();
+        if (budgetAmount == null || cachedBudget == null || cachedBudget <= 0) {
+            return allocations;
+        }
+        double ratio = budgetAmount / cachedBudget;
+        allocations.replaceAll((category, amount) -> (double) Math.round(amount * ratio * 100) / 100);
+        return allocations;
+    }
+
+    private static class LocalEntry {
+        private final GenerationCacheEntry entry;
+        private final long expiresAt;
+
+        private LocalEntry(GenerationCacheEntry entry, long expiresAt) {
+            this.entry = entry;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.aitravelplanner.service.generation;
+
+import com.aitravelplanner.dto.TripCreateRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * AI生成结果缓存键：由规范化后的目的地、天数、排序后的旅行偏好、特殊需求与预算档位组成
+ */
+public final class GenerationCacheKey {
+
+    public static final String KIND_ROUTES = "routes";
+    public static final String KIND_BUDGET = "budget";
+
+    private final String kind;
+    private final String value;
+    private final String id;
+
+    private GenerationCacheKey(String kind, String value) {
+        this.kind = kind;
+        this.value = value;
+        this.id = sha256(kind + "|" + value);
+    }
+
+    public static GenerationCacheKey forRoutes(TripCreateRequest request, int days, long budgetBucketSize) {
+        String value = normalize(request.getDestination())
+                + "|" + days
+                + "|" + normalizePreferences(request.getTravelPreferences())
+                + "|" + normalize(request.getSpecialNeeds())
+                + "|" + budgetBucket(request.getBudgetAmount(), budgetBucketSize);
+        return new GenerationCacheKey(KIND_ROUTES, value);
+    }
+
+    public static GenerationCacheKey forBudget(Double budgetAmount, long budgetBucketSize) {
+        return new GenerationCacheKey(KIND_BUDGET, budgetBucket(budgetAmount, budgetBucketSize));
+    }
+
+    // 去除首尾及内部空白并统一为小写
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.trim().replaceAll("\\s+", "").toLowerCase(Locale.ROOT);
+    }
+
+    // 去重并排序，使偏好顺序不影响缓存键
+    public static String normalizePreferences(List<String> preferences) {
+        if (preferences == null || preferences.isEmpty()) {
+            return "";
+        }
+        TreeSet<String> sorted = new TreeSet<>();
+        for (String preference : preferences) {
+            String normalized = normalize(preference);
+            if (!normalized.isEmpty()) {
+                sorted.add(normalized);
+            }
+        }
+        return String.join(",", sorted);
+    }
+
+    public static String budgetBucket(Double budgetAmount, long budgetBucketSize) {
+        if (budgetAmount == null) {
+            return "none";
+        }
+        return String.valueOf((long) Math.floor(budgetAmount / budgetBucketSize));
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GenerationCacheKey)) {
+            return false;
+        }
+        return id.equals(((GenerationCacheKey) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return kind + ":" + value;
+    }
+}
@@ -0,0 +1,41 @@
+package com.aitravelplanner.service.generation;
+
+import com.aitravelplanner.model.TravelRoute;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 合并参数相同、同时进行的AI生成请求，共享同一次大模型调用。
+ * 路线结果为不含行程ID的模板，调用方需自行复制并绑定到各自的行程。
+ */
+@Component
+public class GenerationCoalescer {
+
+    private final SingleFlight<List<TravelRoute>> routeFlights = new SingleFlight<>();
+    private final SingleFlight<Map<String, Double>> budgetFlights = new SingleFlight<>();
+    private final SingleFlight<GeneratedItinerary> combinedFlights = new SingleFlight<>();
+
+    public List<TravelRoute> coalesceRoutes(GenerationCacheKey key, Supplier<List<TravelRoute>> call) {
+        return routeFlights.execute(key.getId(), call);
+    }
+
+    public Map<String, Double> coalesceBudget(String key, Supplier<Map<String, Double>> call) {
+        return budgetFlights.execute(key, call);
+    }
+
+    public GeneratedItinerary coalesceCombined(String key, Supplier<GeneratedItinerary> call) {
+        return combinedFlights.execute(key, call);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("routes", routeFlights.snapshot());
+        stats.put("budget", budgetFlights.snapshot());
+        stats.put("combined", combinedFlights.snapshot());
+        return stats;
+    }
+}
@@ -0,0 +1,229 @@
+package com.aitravelplanner.service.generation;
+
+import com.aitravelplanner.dto.TripCreateRequest;
+import com.aitravelplanner.model.Trip;
+import com.aitravelplanner.service.TripGenerationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热门行程模板预热：定时从 trips 集合统计近期最常见的"目的地+天数+旅行偏好+预算档位"组合，
+ * 在低峰期提前生成并写入生成缓存，首个命中该组合的请求即可直接使用缓存模板；
+ * 每轮生成数量受配额限制，已有模板超过刷新时间后重新生成。
+ */
+@Component
+public class GenerationPrewarmer {
+    private static final Logger logger = LoggerFactory.getLogger(GenerationPrewarmer.class);
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private TripGenerationService tripGenerationService;
+
+    @Autowired
+    private GenerationCache generationCache;
+
+    @Value("${ai.generation.prewarm.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.generation.prewarm.lookback-days:30}")
+    private int lookbackDays;
+
+    @Value("${ai.generation.prewarm.sample-size:5000}")
+    private int sampleSize;
+
+    @Value("${ai.generation.prewarm.top-n:30}")
+    private int topN;
+
+    @Value("${ai.generation.prewarm.min-occurrences:3}")
+    private int minOccurrences;
+
+    @Value("${ai.generation.prewarm.quota-per-run:20}")
+    private int quotaPerRun;
+
+    @Value("${ai.generation.prewarm.refresh-after-hours:72}")
+    private long refreshAfterHours;
+
+    @Value("${ai.generation.prewarm.max-consecutive-failures:3}")
+    private int maxConsecutiveFailures;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong refreshed = new AtomicLong();
+    private final AtomicLong skippedFresh = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile Date lastRunAt;
+    private volatile int lastCandidates;
+
+    @Scheduled(cron = "${ai.generation.prewarm.cron:0 0 4 * * *}")
+    public void scheduledPrewarm() {
+        if (enabled) {
+            prewarm();
+        }
+    }
+
+    /**
+     * 执行一轮预热，返回本轮生成（含刷新）的模板数
+     */
+    public int prewarm() {
+        if (!generationCache.isEnabled()) {
+            logger.info("生成缓存未启用，跳过模板预热");
+            return 0;
+        }
+        if (!running.compareAndSet(false, true)) {
+            logger.info("上一轮模板预热仍在进行，跳过本轮");
+            return 0;
+        }
+        try {
+            runs.incrementAndGet();
+            lastRunAt = new Date();
+            List<Candidate> candidates = findPopularCandidates();
+            lastCandidates = candidates.size();
+            logger.info("开始模板预热，候选组合 {} 个，本轮配额 {}", candidates.size(), quotaPerRun);
+
+            int used = 0;
+            int consecutiveFailures = 0;
+            long refreshAfterMillis = TimeUnit.HOURS.toMillis(refreshAfterHours);
+            for (Candidate candidate : candidates) {
+                if (used >= quotaPerRun) {
+                    break;
+                }
+                TripCreateRequest request = candidate.toRequest();
+                GenerationCacheKey key = GenerationCacheKey.forRoutes(request, candidate.days,
+                        generationCache.getBudgetBucketSize());
+                Optional<Date> createdAt = generationCache.getCreatedAt(key);
+                if (createdAt.isPresent() && System.currentTimeMillis() - createdAt.get().getTime() < refreshAfterMillis) {
+                    skippedFresh.incrementAndGet();
+                    continue;
+                }
+
+                used++;
+                try {
+                    tripGenerationService.refreshTemplate(request);
+                    (createdAt.isPresent() ? refreshed : generated).incrementAndGet();
+                    consecutiveFailures = 0;
+                    logger.info("预热模板完成: {}（近期 {} 次）", key, candidate.count);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    logger.warn("预热模板失败: {}, 错误: {}", key, e.getMessage());
+                    // 上游持续失败时提前结束本轮，避免在熔断或限流期间继续消耗配额
+                    if (++consecutiveFailures >= maxConsecutiveFailures) {
+                        logger.warn("连续 {} 次预热失败，提前结束本轮", consecutiveFailures);
+                        break;
+                    }
+                }
+            }
+            logger.info("模板预热结束，本轮调用 {} 次", used);
+            return used;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running.get());
+        stats.put("runs", runs.get());
+        stats.put("lastRunAt", lastRunAt);
+        stats.put("lastCandidates", lastCandidates);
+        stats.put("generated", generated.get());
+        stats.put("refreshed", refreshed.get());
+        stats.put("skippedFresh", skippedFresh.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+
+    // 按缓存键的同一规范化方式统计近期行程，返回出现次数最多的前 topN 个组合
+    private List<Candidate> findPopularCandidates() {
+        Query query = new Query(Criteria.where("createdAt")
+                .gte(new Date(System.currentTimeMillis() - lookbackDays * DAY_MILLIS)))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt"))
+                .limit(sampleSize);
+        query.fields().include("destination", "startDate", "endDate", "travelPreferences", "budgetAmount");
+
+        Map<String, Candidate> candidates = new HashMap<>();
+        for (Trip trip : mongoTemplate.find(query, Trip.class)) {
+            if (trip.getDestination() == null || trip.getStartDate() == null || trip.getEndDate() == null) {
+                continue;
+            }
+            int days = (int) ((trip.getEndDate().getTime() - trip.getStartDate().getTime()) / DAY_MILLIS) + 1;
+            if (days <= 0) {
+                continue;
+            }
+            String value = GenerationCacheKey.normalize(trip.getDestination())
+                    + "|" + days
+                    + "|" + GenerationCacheKey.normalizePreferences(trip.getTravelPreferences())
+                    + "|" + GenerationCacheKey.budgetBucket(trip.getBudgetAmount(), generationCache.getBudgetBucketSize());
+            candidates.computeIfAbsent(value, key -> new Candidate(trip, days)).add(trip.getBudgetAmount());
+        }
+
+        List<Candidate> popular = new ArrayList<>();
+        for (Candidate candidate : candidates.values()) {
+            if (candidate.count >= minOccurrences) {
+                popular.add(candidate);
+            }
+        }
+        popular.sort(Comparator.comparingInt((Candidate candidate) -> candidate.count).reversed());
+        return popular.size() > topN ? popular.subList(0, topN) : popular;
+    }
+
+    private static class Candidate {
+        private final String destination;
+        private final List<String> travelPreferences;
+        private final int days;
+        private int count;
+        private int budgetCount;
+        private double budgetSum;
+
+        private Candidate(Trip trip, int days) {
+            this.destination = trip.getDestination().trim();
+            this.travelPreferences = trip.getTravelPreferences();
+            this.days = days;
+        }
+
+        private void add(Double budgetAmount) {
+            count++;
+            if (budgetAmount != null) {
+                budgetCount++;
+                budgetSum += budgetAmount;
+            }
+        }
+
+        // 构造生成模板用的请求：预算取该档位内的平均值，与缓存键保持同一档位
+        private TripCreateRequest toRequest() {
+            TripCreateRequest request = new TripCreateRequest();
+            request.setDestination(destination);
+            request.setTravelPreferences(travelPreferences);
+            request.setBudgetAmount(budgetCount == 0 ? null : budgetSum / budgetCount);
+            Date startDate = new Date();
+            request.setStartDate(startDate);
+            request.setEndDate(new Date(startDate.getTime() + (days - 1) * DAY_MILLIS));
+            return request;
+        }
+    }
+}
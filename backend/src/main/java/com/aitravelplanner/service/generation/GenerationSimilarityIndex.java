@@ -0,0 +1,318 @@
+package com.aitravelplanner.service.generation;
+
+import com.aitravelplanner.model.GenerationCacheEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 路线生成请求的近似重复索引（MinHash + LSH）：
+ * 目的地去掉"市/省/区/县"等后缀、天数与旅行偏好相同、预算档位相邻的请求，按特殊需求的字符3-gram
+ * 估算Jaccard相似度，超过阈值时复用已缓存的路线。偏好不同的请求不会互相复用。索引只保存在内存中，条目数有上限，启动时从缓存集合重建。
+ */
+@Component
+public class GenerationSimilarityIndex {
+    private static final Logger logger = LoggerFactory.getLogger(GenerationSimilarityIndex.class);
+
+    private static final String[] ADMINISTRATIVE_SUFFIXES = {"特别行政区", "自治州", "自治区", "地区", "市", "省", "区", "县"};
+    private static final int SHINGLE_SIZE = 3;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${ai.generation.similarity.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.generation.similarity.threshold:0.8}")
+    private double threshold;
+
+    @Value("${ai.generation.similarity.max-entries:5000}")
+    private int maxEntries;
+
+    @Value("${ai.generation.similarity.bands:16}")
+    private int bands;
+
+    @Value("${ai.generation.similarity.rows-per-band:4}")
+    private int rowsPerBand;
+
+    @Value("${ai.generation.similarity.budget-bucket-tolerance:1}")
+    private int budgetBucketTolerance;
+
+    // 按插入顺序淘汰最早加入的条目
+    private final LinkedHashMap<String, IndexedEntry> entries = new LinkedHashMap<>();
+    private final Map<String, Set<String>> buckets = new HashMap<>();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong candidatesChecked = new AtomicLong();
+
+    /**
+     * 启动后从 generation_cache 集合中最近的路线条目重建索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Query query = new Query(Criteria.where("kind").is(GenerationCacheKey.KIND_ROUTES))
+                    .with(Sort.by(Sort.Direction.DESC, "createdAt"))
+                    .limit(maxEntries);
+            query.fields().include("cacheKey");
+            List<GenerationCacheEntry> recent = mongoTemplate.find(query, GenerationCacheEntry.class);
+            // 从旧到新加入，使淘汰顺序与写入顺序一致
+            for (int i = recent.size() - 1; i >= 0; i--) {
+                GenerationCacheEntry entry = recent.get(i);
+                add(entry.getId(), entry.getCacheKey());
+            }
+            logger.info("路线近似重复索引重建完成，条目数: {}", size());
+        } catch (Exception e) {
+            logger.error("重建路线近似重复索引失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 将路线缓存键加入索引
+     */
+    public void add(GenerationCacheKey key) {
+        if (enabled && GenerationCacheKey.KIND_ROUTES.equals(key.getKind())) {
+            add(key.getId(), key.getValue());
+        }
+    }
+
+    /**
+     * 查找与给定缓存键近似的已缓存条目
+     * @return 相似度最高且超过阈值的条目ID
+     */
+    public Optional<String> findSimilar(GenerationCacheKey key) {
+        if (!enabled || !GenerationCacheKey.KIND_ROUTES.equals(key.getKind())) {
+            return Optional.empty();
+        }
+        lookups.incrementAndGet();
+        Features features = Features.parse(key.getValue());
+        if (features == null) {
+            return Optional.empty();
+        }
+        long[] signature = signature(features.shingles);
+
+        String bestId = null;
+        double bestSimilarity = threshold;
+        synchronized (this) {
+            Set<String> candidates = new HashSet<>();
+            for (int band = 0; band < bands; band++) {
+                Set<String> bucket = buckets.get(bandKey(features, signature, band));
+                if (bucket != null) {
+                    candidates.addAll(bucket);
+                }
+            }
+            candidatesChecked.addAndGet(candidates.size());
+            for (String id : candidates) {
+                IndexedEntry candidate = entries.get(id);
+                if (id.equals(key.getId()) || candidate == null
+                        || !budgetCompatible(features.budgetBucket, candidate.features.budgetBucket)) {
+                    continue;
+                }
+                double similarity = estimateSimilarity(signature, candidate.signature);
+                if (similarity >= bestSimilarity) {
+                    bestSimilarity = similarity;
+                    bestId = id;
+                }
+            }
+        }
+        if (bestId != null) {
+            matches.incrementAndGet();
+            logger.info("找到近似的路线缓存，相似度: {}，缓存键: {}", String.format("%.2f", bestSimilarity), key);
+        }
+        return Optional.ofNullable(bestId);
+    }
+
+    /**
+     * 移除已失效（缓存中已不存在）的条目
+     */
+    public synchronized void remove(String id) {
+        IndexedEntry removed = entries.remove(id);
+        if (removed != null) {
+            unlink(id, removed);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("threshold", threshold);
+        stats.put("entries", size());
+        stats.put("lookups", lookups.get());
+        stats.put("matches", matches.get());
+        stats.put("candidatesChecked", candidatesChecked.get());
+        return stats;
+    }
+
+    /**
+     * 规范化目的地：在缓存键规范化的基础上去掉行政区划后缀，如"杭州市"与"杭州"视为相同
+     */
+    public static String canonicalDestination(String destination) {
+        String normalized = GenerationCacheKey.normalize(destination);
+        for (String suffix : ADMINISTRATIVE_SUFFIXES) {
+            if (normalized.length() > suffix.length() + 1 && normalized.endsWith(suffix)) {
+                return normalized.substring(0, normalized.length() - suffix.length());
+            }
+        }
+        return normalized;
+    }
+
+    private synchronized void add(String id, String cacheKeyValue) {
+        Features features = Features.parse(cacheKeyValue);
+        if (features == null) {
+            return;
+        }
+        remove(id);
+        IndexedEntry entry = new IndexedEntry(features, signature(features.shingles));
+        entries.put(id, entry);
+        for (int band = 0; band < bands; band++) {
+            buckets.computeIfAbsent(bandKey(features, entry.signature, band), key -> new HashSet<>()).add(id);
+        }
+        while (entries.size() > maxEntries) {
+            Map.Entry<String, IndexedEntry> eldest = entries.entrySet().iterator().next();
+            entries.remove(eldest.getKey());
+            unlink(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void unlink(String id, IndexedEntry entry) {
+        for (int band = 0; band < bands; band++) {
+            String bandKey = bandKey(entry.features, entry.signature, band);
+            Set<String> bucket = buckets.get(bandKey);
+            if (bucket != null) {
+                bucket.remove(id);
+                if (bucket.isEmpty()) {
+                    buckets.remove(bandKey);
+                }
+            }
+        }
+    }
+
+    // 目的地、天数与偏好必须相同，直接作为分桶键的一部分
+    private String bandKey(Features features, long[] signature, int band) {
+        int from = band * rowsPerBand;
+        return features.destination + "|" + features.days + "|" + features.preferences + "|" + band + "|"
+                + Arrays.hashCode(Arrays.copyOfRange(signature, from, from + rowsPerBand));
+    }
+
+    private boolean budgetCompatible(String bucket, String other) {
+        if (bucket.equals(other)) {
+            return true;
+        }
+        try {
+            return Math.abs(Long.parseLong(bucket) - Long.parseLong(other)) <= budgetBucketTolerance;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private long[] signature(Set<String> shingles) {
+        long[] signature = new long[bands * rowsPerBand];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String shingle : shingles) {
+            long base = mix(shingle.hashCode());
+            for (int i = 0; i < signature.length; i++) {
+                long hash = mix(base + 0x9E3779B97F4A7C15L * (i + 1));
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private static double estimateSimilarity(long[] signature, long[] other) {
+        int equal = 0;
+        for (int i = 0; i < signature.length; i++) {
+            if (signature[i] == other[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / signature.length;
+    }
+
+    // SplitMix64 混合函数，用不同的偏移模拟一组独立的哈希函数
+    private static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static class IndexedEntry {
+        private final Features features;
+        private final long[] signature;
+
+        private IndexedEntry(Features features, long[] signature) {
+            this.features = features;
+            this.signature = signature;
+        }
+    }
+
+    /**
+     * 从路线缓存键（目的地|天数|偏好|特殊需求|预算档位）中提取的特征
+     */
+    private static class Features {
+        private String destination;
+        private int days;
+        private String preferences; // 已规范化排序的偏好列表
+        private String budgetBucket;
+        private final Set<String> shingles = new HashSet<>();
+
+        private static Features parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split("\\|", -1);
+            if (parts.length < 5) {
+                return null;
+            }
+            Features features = new Features();
+            features.destination = canonicalDestination(parts[0]);
+            try {
+                features.days = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            features.budgetBucket = parts[parts.length - 1];
+            features.preferences = parts[2];
+            // 特殊需求可能包含分隔符，取中间的全部内容
+            String specialNeeds = String.join("|", List.of(parts).subList(3, parts.length - 1));
+            if (specialNeeds.length() <= SHINGLE_SIZE) {
+                if (!specialNeeds.isEmpty()) {
+                    features.shingles.add(specialNeeds);
+                }
+            } else {
+                for (int i = 0; i + SHINGLE_SIZE <= specialNeeds.length(); i++) {
+                    features.shingles.add(specialNeeds.substring(i, i + SHINGLE_SIZE));
+                }
+            }
+            return features;
+        }
+    }
+}
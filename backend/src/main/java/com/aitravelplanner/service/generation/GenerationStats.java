@@ -0,0 +1,73 @@
+package com.aitravelplanner.service.generation;
+
+import com.aitravelplanner.llm.LatencyStats;
+import com.aitravelplanner.llm.LlmResult;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按生成模式（split 两次调用 / combined 单次调用 / segmented 长行程分段并行）统计端到端生成耗时与大模型调用开销，用于对比两种模式
+ */
+@Component
+public class GenerationStats {
+
+    public static final String MODE_SPLIT = "split";
+    public static final String MODE_COMBINED = "combined";
+    public static final String MODE_SEGMENTED = "segmented";
+
+    private final Map<String, ModeStats> modes = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次行程生成（从开始调用到路线与预算均可用）的耗时
+     */
+    public void recordGeneration(String mode, long millis) {
+        modeStats(mode).latency.record(millis);
+    }
+
+    /**
+     * 记录一次大模型调用的提示词与生成token数
+     */
+    public void recordCall(String mode, LlmResult result) {
+        ModeStats stats = modeStats(mode);
+        stats.llmCalls.incrementAndGet();
+        if (result.getInputTokens() != null) {
+            stats.promptTokens.addAndGet(result.getInputTokens());
+        }
+        if (result.getOutputTokens() != null) {
+            stats.completionTokens.addAndGet(result.getOutputTokens());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        modes.forEach((mode, modeStats) -> stats.put(mode, modeStats.snapshot()));
+        return stats;
+    }
+
+    private ModeStats modeStats(String mode) {
+        return modes.computeIfAbsent(mode, key -> new ModeStats());
+    }
+
+    private static class ModeStats {
+        private final LatencyStats latency = new LatencyStats(512);
+        private final AtomicLong llmCalls = new AtomicLong();
+        private final AtomicLong promptTokens = new AtomicLong();
+        private final AtomicLong completionTokens = new AtomicLong();
+
+        private Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            long generations = latency.getCount();
+            snapshot.put("generations", generations);
+            snapshot.put("latency", latency.snapshot());
+            snapshot.put("llmCalls", llmCalls.get());
+            snapshot.put("promptTokens", promptTokens.get());
+            snapshot.put("completionTokens", completionTokens.get());
+            snapshot.put("avgCallsPerGeneration", generations == 0 ? 0.0 : (double) llmCalls.get() / generations);
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.aitravelplanner.service.generation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量解析大模型流式输出中的 "routes" 数组：每当数组中的一个单日对象闭合时，返回该对象的JSON文本。
+ * 只跟踪括号深度与字符串状态，不构建完整的JSON树；非线程安全，每次生成使用一个新实例。
+ */
+public class RoutesStreamParser {
+
+    private final StringBuilder buffer = new StringBuilder();
+    private int position = 0;        // 下一个待扫描字符的位置
+    private boolean inRoutes = false; // 是否已进入 routes 数组
+    private boolean finished = false; // routes 数组是否已结束
+    private int depth = 0;           // 相对 routes 数组内部的嵌套深度
+    private boolean inString = false;
+    private boolean escaped = false;
+    private int objectStart = -1;    // 当前单日对象在缓冲区中的起始位置
+
+    /**
+     * 追加一段增量文本
+     * @param chunk 新生成的文本
+     * @return 本次新闭合的单日对象JSON文本列表
+     */
+    public List<String> feed(String chunk) {
+        List<String> completed = new ArrayList<>();
+        if (finished || chunk == null || chunk.isEmpty()) {
+            return completed;
+        }
+        buffer.append(chunk);
+
+        if (!inRoutes && !locateRoutesArray()) {
+            return completed;
+        }
+
+        while (position < buffer.length() && !finished) {
+            char c = buffer.charAt(position);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{' || c == '[') {
+                if (depth == 0 && c == '{') {
+                    objectStart = position;
+                }
+                depth++;
+            } else if (c == '}' || c == ']') {
+                if (depth == 0) {
+                    // routes 数组结束
+                    finished = true;
+                } else {
+                    depth--;
+                    if (depth == 0 && c == '}' && objectStart >= 0) {
+                        completed.add(buffer.substring(objectStart, position + 1));
+                        objectStart = -1;
+                    }
+                }
+            }
+            position++;
+        }
+
+        compact();
+        return completed;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    // 查找 "routes" 键后的数组起始位置
+    private boolean locateRoutesArray() {
+        int key = buffer.indexOf("\"routes\"");
+        if (key < 0) {
+            return false;
+        }
+        int bracket = buffer.indexOf("[", key);
+        if (bracket < 0) {
+            return false;
+        }
+        inRoutes = true;
+        position = bracket + 1;
+        return true;
+    }
+
+    // 丢弃已处理完的前缀，避免缓冲区随输出长度增长
+    private void compact() {
+        int keepFrom = objectStart >= 0 ? objectStart : position;
+        if (keepFrom > 0) {
+            buffer.delete(0, keepFrom);
+            position -= keepFrom;
+            if (objectStart >= 0) {
+                objectStart = 0;
+            }
+        }
+    }
+}
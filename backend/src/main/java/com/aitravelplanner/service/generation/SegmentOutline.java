@@ -0,0 +1,16 @@
+package com.aitravelplanner.service.generation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 长行程分段生成前的概要：每段的游览区域与分配给该段的主要景点
+ */
+@Data
+@AllArgsConstructor
+public class SegmentOutline {
+    private String area;
+    private List<String> attractions;
+}
@@ -0,0 +1,65 @@
+package com.aitravelplanner.service.generation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 相同键的并发调用合并：同一时刻只有第一个调用方真正执行，其余调用方等待并共享其结果或异常
+ */
+public class SingleFlight<T> {
+
+    private final ConcurrentHashMap<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+
+    public T execute(String key, Supplier<T> supplier) {
+        calls.incrementAndGet();
+        CompletableFuture<T> created = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            shared.incrementAndGet();
+            return await(existing);
+        }
+
+        try {
+            T result = supplier.get();
+            created.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Error 也要传给等待中的调用方，否则它们会一直阻塞
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        long total = calls.get();
+        snapshot.put("calls", total);
+        snapshot.put("shared", shared.get());
+        snapshot.put("coalescingRatio", total == 0 ? 0.0 : (double) shared.get() / total);
+        snapshot.put("inFlight", inFlight.size());
+        return snapshot;
+    }
+
+    private T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.aitravelplanner.service.generation;
+
+import com.aitravelplanner.llm.LatencyStats;
+import com.aitravelplanner.llm.LlmResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 大模型token用量统计与 max_tokens 估算：
+ * 按请求类型记录提示词/生成token数，以近期"每天行程消耗的token数"的P90乘以天数与安全系数作为 max_tokens，
+ * 避免固定上限过小导致长行程被截断、或过大导致短行程占用过多配额。
+ */
+@Component
+public class TokenAccountant {
+    private static final Logger logger = LoggerFactory.getLogger(TokenAccountant.class);
+
+    public static final String KIND_ROUTES = "routes";
+    public static final String KIND_BUDGET = "budget";
+    public static final String KIND_COMBINED = "combined";
+    public static final String KIND_OUTLINE = "outline";
+
+    @Value("${ai.llm.tokens.default-per-day:600}")
+    private int defaultTokensPerDay;
+
+    @Value("${ai.llm.tokens.safety-factor:1.3}")
+    private double safetyFactor;
+
+    @Value("${ai.llm.tokens.overhead:200}")
+    private int overheadTokens;
+
+    @Value("${ai.llm.tokens.budget-max-tokens:300}")
+    private int budgetMaxTokens;
+
+    @Value("${ai.llm.tokens.min:256}")
+    private int minTokens;
+
+    @Value("${ai.llm.tokens.max:8192}")
+    private int maxTokens;
+
+    @Value("${ai.llm.tokens.sample-window:200}")
+    private int sampleWindow;
+
+    @Value("${ai.llm.tokens.truncation-boost:1.5}")
+    private double truncationBoost;
+
+    private final Map<String, KindStats> kinds = new ConcurrentHashMap<>();
+
+    /**
+     * 估算本次调用的 max_tokens
+     * @param kind 请求类型
+     * @param days 行程天数，预算请求忽略
+     */
+    public int maxTokensFor(String kind, int days) {
+        KindStats stats = kindStats(kind);
+        long estimate;
+        if (KIND_BUDGET.equals(kind)) {
+            long p90 = stats.samples.percentile(90);
+            estimate = p90 < 0 ? budgetMaxTokens : (long) Math.ceil(p90 * safetyFactor);
+        } else {
+            long p90PerDay = stats.samples.percentile(90);
+            long perDay = p90PerDay < 0 ? defaultTokensPerDay : p90PerDay;
+            estimate = (long) Math.ceil(perDay * Math.max(1, days) * safetyFactor) + overheadTokens;
+            if (KIND_COMBINED.equals(kind)) {
+                estimate += budgetMaxTokens;
+            }
+        }
+        return (int) Math.max(minTokens, Math.min(maxTokens, estimate));
+    }
+
+    /**
+     * 输出被截断后重试使用的 max_tokens：上一次上限翻倍，不超过模型上限
+     */
+    public int retryMaxTokens(int previous) {
+        return (int) Math.min(maxTokens, previous * 2L);
+    }
+
+    /**
+     * 记录一次调用的token用量，并把每天消耗的token数加入估算样本；
+     * 被截断的响应只代表下限，按放大系数记入样本以尽快调高后续估算
+     */
+    public void record(String kind, int days, int maxTokensUsed, LlmResult result) {
+        KindStats stats = kindStats(kind);
+        stats.calls.incrementAndGet();
+        if (result.getInputTokens() != null) {
+            stats.promptTokens.addAndGet(result.getInputTokens());
+        }
+        Integer outputTokens = result.getOutputTokens();
+        if (outputTokens != null) {
+            stats.completionTokens.addAndGet(outputTokens);
+        }
+        if (result.isTruncated()) {
+            stats.truncations.incrementAndGet();
+            logger.warn("大模型输出被截断，类型: {}，天数: {}，max_tokens: {}", kind, days, maxTokensUsed);
+        }
+        int sampleTokens = outputTokens != null ? outputTokens : maxTokensUsed;
+        if (!KIND_BUDGET.equals(kind)) {
+            // 合并生成的输出包含预算部分，扣除后再按天均摊
+            if (KIND_COMBINED.equals(kind)) {
+                sampleTokens = Math.max(0, sampleTokens - budgetMaxTokens);
+            }
+            sampleTokens = sampleTokens / Math.max(1, days);
+        }
+        if (result.isTruncated()) {
+            sampleTokens = (int) Math.ceil(sampleTokens * truncationBoost);
+        }
+        if (sampleTokens > 0) {
+            stats.samples.record(sampleTokens);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        kinds.forEach((kind, kindStats) -> stats.put(kind, kindStats.snapshot()));
+        return stats;
+    }
+
+    private KindStats kindStats(String kind) {
+        return kinds.computeIfAbsent(kind, key -> new KindStats(sampleWindow));
+    }
+
+    private static class KindStats {
+        // 路线/合并生成记录每天的token数，预算记录单次输出token数
+        private final LatencyStats samples;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong promptTokens = new AtomicLong();
+        private final AtomicLong completionTokens = new AtomicLong();
+        private final AtomicLong truncations = new AtomicLong();
+
+        private KindStats(int window) {
+            this.samples = new LatencyStats(window);
+        }
+
+        private Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("calls", calls.get());
+            snapshot.put("promptTokens", promptTokens.get());
+            snapshot.put("completionTokens", completionTokens.get());
+            snapshot.put("truncations", truncations.get());
+            snapshot.put("p50Sample", samples.percentile(50));
+            snapshot.put("p90Sample", samples.percentile(90));
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.aitravelplanner.service.generation;
+
+import com.aitravelplanner.model.TravelRoute;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONException;
+import com.alibaba.fastjson2.JSONReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 将大模型返回的JSON文本单遍顺序读取并直接填充 TravelRoute，不构建中间的 JSONObject 树；
+ * 未识别的字段直接跳过。生成的路线不含行程ID，由调用方绑定。
+ */
+public final class TravelRouteBinder {
+
+    // 预算分配的固定类别，缺失的类别按0处理
+    private static final String[] BUDGET_CATEGORIES = {"住宿", "餐饮", "交通", "门票", "购物", "其他"};
+
+    private TravelRouteBinder() {
+    }
+
+    /**
+     * 读取 {"routes": [...], "budget": {...}}，budget 可缺失
+     * @param json 大模型返回的文本
+     * @param destination 目的地，景点缺少经纬度时用于生成模拟地址
+     * @return 路线与预算分配，缺少预算时 allocations 为null
+     * @throws JSONException 格式错误或缺少 routes
+     */
+    public static GeneratedItinerary readItinerary(String json, String destination) {
+        List<TravelRoute> routes = null;
+        Map<String, Double> allocations = null;
+        try (JSONReader reader = JSONReader.of(json)) {
+            if (!reader.nextIfObjectStart()) {
+                throw new JSONException("返回内容不是JSON对象");
+            }
+            while (!reader.nextIfObjectEnd()) {
+                String field = reader.readFieldName();
+                if ("routes".equals(field) && reader.nextIfArrayStart()) {
+                    routes = new ArrayList<>();
+                    while (!reader.nextIfArrayEnd()) {
+                        routes.add(readRoute(reader, destination));
+                    }
+                } else if ("budget".equals(field) && reader.nextIfObjectStart()) {
+                    allocations = readAllocationFields(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+        if (routes == null) {
+            throw new JSONException("返回内容缺少routes");
+        }
+        return new GeneratedItinerary(routes, allocations);
+    }
+
+    /**
+     * 读取 {"routes": [...]}
+     */
+    public static List<TravelRoute> readRoutes(String json, String destination) {
+        return readItinerary(json, destination).getRoutes();
+    }
+
+    /**
+     * 读取单日行程对象（流式解析出的完整一天）
+     */
+    public static TravelRoute readRoute(String dayJson, String destination) {
+        try (JSONReader reader = JSONReader.of(dayJson)) {
+            return readRoute(reader, destination);
+        }
+    }
+
+    /**
+     * 读取预算分配对象 {"住宿": 1500, ...}
+     */
+    public static Map<String, Double> readAllocations(String json) {
+        try (JSONReader reader = JSONReader.of(json)) {
+            if (!reader.nextIfObjectStart()) {
+                throw new JSONException("返回内容不是JSON对象");
+            }
+            return readAllocationFields(reader);
+        }
+    }
+
+    /**
+     * 读取分段概要 {"segments": [{"area": "...", "attractions": [...]}]}
+     * @throws JSONException 格式错误或缺少 segments
+     */
+    public static List<SegmentOutline> readOutline(String json) {
+        List<SegmentOutline> segments = null;
+        try (JSONReader reader = JSONReader.of(json)) {
+            if (!reader.nextIfObjectStart()) {
+                throw new JSONException("返回内容不是JSON对象");
+            }
+            while (!reader.nextIfObjectEnd()) {
+                String field = reader.readFieldName();
+                if ("segments".equals(field) && reader.nextIfArrayStart()) {
+                    segments = new ArrayList<>();
+                    while (!reader.nextIfArrayEnd()) {
+                        segments.add(readSegmentOutline(reader));
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+        if (segments == null) {
+            throw new JSONException("返回内容缺少segments");
+        }
+        return segments;
+    }
+
+    private static SegmentOutline readSegmentOutline(JSONReader reader) {
+        if (!reader.nextIfObjectStart()) {
+            throw new JSONException("分段概要格式错误");
+        }
+        SegmentOutline segment = new SegmentOutline(null, new ArrayList<>());
+        while (!reader.nextIfObjectEnd()) {
+            String field = reader.readFieldName();
+            if ("area".equals(field)) {
+                segment.setArea(readText(reader));
+            } else if ("attractions".equals(field)) {
+                segment.setAttractions(readStrings(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        return segment;
+    }
+
+    private static TravelRoute readRoute(JSONReader reader, String destination) {
+        if (!reader.nextIfObjectStart()) {
+            throw new JSONException("行程格式错误");
+        }
+        TravelRoute route = new TravelRoute();
+        Date now = new Date();
+        route.setCreatedAt(now);
+        route.setUpdatedAt(now);
+        while (!reader.nextIfObjectEnd()) {
+            String field = reader.readFieldName();
+            if (field == null) {
+                reader.skipValue();
+                continue;
+            }
+            switch (field) {
+                case "day":
+                    route.setDayNumber(reader.readInt32());
+                    break;
+                case "description":
+                    route.setDescription(readText(reader));
+                    break;
+                case "transportation":
+                    route.setTransportation(readText(reader));
+                    break;
+                case "attractions":
+                    route.setAttractions(readStrings(reader));
+                    break;
+                case "attractionDetails":
+                    route.setAttractionDes(readAttractionDetails(reader));
+                    break;
+                case "restaurants":
+                    route.setRestaurants(readStrings(reader));
+                    break;
+                case "accommodations":
+                    route.setAccommodations(readStrings(reader));
+                    break;
+                case "estimatedCost":
+                    route.setEstimatedCost(readDouble(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        fillDefaults(route, destination);
+        return route;
+    }
+
+    // 缺失的列表置空列表；没有经纬度信息时按景点名称生成模拟数据
+    private static void fillDefaults(TravelRoute route, String destination) {
+        if (route.getAttractions() == null) {
+            route.setAttractions(new ArrayList<>());
+        }
+        if (route.getRestaurants() == null) {
+            route.setRestaurants(new ArrayList<>());
+        }
+        if (route.getAccommodations() == null) {
+            route.setAccommodations(new ArrayList<>());
+        }
+        if (route.getAttractionDes() == null) {
+            List<String> attractions = route.getAttractions();
+            List<Map<String, Object>> attractionDes = new ArrayList<>(attractions.size());
+            for (int j = 0; j < attractions.size(); j++) {
+                Map<String, Object> des = new HashMap<>(8);
+                des.put("name", attractions.get(j));
+                // 生成随机经纬度（作为备选）
+                double baseLat = 30.0 + (Math.random() - 0.5) * 2;
+                double baseLng = 120.0 + (Math.random() - 0.5) * 2;
+                des.put("latitude", Math.round(baseLat * 1000000) / 1000000.0);
+                des.put("longitude", Math.round(baseLng * 1000000) / 1000000.0);
+                des.put("address", destination + "市某区某路" + j + "号");
+                attractionDes.add(des);
+            }
+            route.setAttractionDes(attractionDes);
+        }
+    }
+
+    private static List<Map<String, Object>> readAttractionDetails(JSONReader reader) {
+        if (!reader.nextIfArrayStart()) {
+            reader.skipValue();
+            return null;
+        }
+        List<Map<String, Object>> details = new ArrayList<>();
+        while (!reader.nextIfArrayEnd()) {
+            if (!reader.nextIfObjectStart()) {
+                reader.skipValue();
+                continue;
+            }
+            Map<String, Object> des = new HashMap<>(8);
+            des.put("name", null);
+            des.put("latitude", null);
+            des.put("longitude", null);
+            des.put("address", null);
+            while (!reader.nextIfObjectEnd()) {
+                String field = reader.readFieldName();
+                if ("name".equals(field) || "address".equals(field)) {
+                    des.put(field, readText(reader));
+                } else if ("latitude".equals(field) || "longitude".equals(field)) {
+                    des.put(field, readDouble(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            details.add(des);
+        }
+        return details;
+    }
+
+    private static List<String> readStrings(JSONReader reader) {
+        if (reader.nextIfNull()) {
+            return new ArrayList<>();
+        }
+        if (!reader.nextIfArrayStart()) {
+            // 模型偶尔返回单个字符串而不是数组
+            return new ArrayList<>(Collections.singletonList(readText(reader)));
+        }
+        List<String> values = new ArrayList<>();
+        while (!reader.nextIfArrayEnd()) {
+            values.add(readText(reader));
+        }
+        return values;
+    }
+
+    // 字符串直接读取，其他类型的值按其JSON文本保存
+    private static String readText(JSONReader reader) {
+        if (reader.isString()) {
+            return reader.readString();
+        }
+        if (reader.nextIfNull()) {
+            return null;
+        }
+        Object value = reader.readAny();
+        return value instanceof Map || value instanceof List
+                ? JSON.toJSONString(value) : String.valueOf(value);
+    }
+
+    private static Double readDouble(JSONReader reader) {
+        if (reader.nextIfNull()) {
+            return null;
+        }
+        Number number = reader.readNumber();
+        return number == null ? null : number.doubleValue();
+    }
+
+    private static Map<String, Double> readAllocationFields(JSONReader reader) {
+        Map<String, Double> values = new HashMap<>(16);
+        while (!reader.nextIfObjectEnd()) {
+            String field = reader.readFieldName();
+            if (reader.isNumber() || reader.isString()) {
+                Double value = readDouble(reader);
+                values.put(field, value == null ? 0.0 : value);
+            } else {
+                reader.skipValue();
+            }
+        }
+        Map<String, Double> allocations = new HashMap<>(16);
+        for (String category : BUDGET_CATEGORIES) {
+            allocations.put(category, values.getOrDefault(category, 0.0));
+        }
+        return allocations;
+    }
+}
@@ -1,19 +1,40 @@
 package com.aitravelplanner.service.impl;
 
 import com.aitravelplanner.dto.BudgetAllocationRequest;
+import com.aitravelplanner.dto.BudgetAnalytics;
 import com.aitravelplanner.dto.ExpenseAddRequest;
 import com.aitravelplanner.model.Budget;
 import com.aitravelplanner.model.Expense;
+import com.aitravelplanner.model.ExpenseBucket;
 import com.aitravelplanner.model.Trip;
+import com.aitravelplanner.repository.ExpenseBucketRepository;
 import com.aitravelplanner.repository.TripRepository;
 import com.aitravelplanner.service.BudgetService;
+import com.aitravelplanner.service.budget.BudgetReconciler;
+import com.aitravelplanner.service.budget.BudgetTotals;
+import com.aitravelplanner.service.budget.ExpenseWriteCombiner;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 
 @Service
@@ -22,37 +43,99 @@ public class BudgetServiceImpl implements BudgetService {
     @Autowired
     private TripRepository tripRepository;
 
+    @Autowired
+    private ExpenseBucketRepository expenseBucketRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ExpenseWriteCombiner expenseWriteCombiner;
+
+    @Autowired
+    private BudgetReconciler budgetReconciler;
+
     @Override
     public Budget getTripBudget(String tripId) {
         Trip trip = tripRepository.findById(tripId)
                 .orElseThrow(() -> new RuntimeException("行程不存在"));
 
-        // 如果预算为null，初始化一个新的预算
+        // 如果预算为null，初始化一个新的预算；只在库中仍没有预算时写入，不覆盖并发写入的金额
         if (trip.getBudget() == null) {
             Budget budget = new Budget();
             budget.setTotalBudget(0.0);
             budget.setAllocations(Map.of());
-            budget.setExpenses(new ArrayList<>());
             budget.setSpentAmount(0.0);
             budget.setRemainingAmount(0.0);
             trip.setBudget(budget);
-            tripRepository.save(trip);
+            mongoTemplate.updateFirst(
+                    new Query(Criteria.where("_id").is(tripId).and("budget").exists(false)),
+                    new Update().set("budget", budget), Trip.class);
         }
 
+        trip.getBudget().setExpenses(loadExpenses(tripId));
         return trip.getBudget();
     }
 
+    /**
+     * 只读取行程上的预算汇总字段，耗时与费用条数无关
+     */
     @Override
-    public Expense addExpense(String tripId, ExpenseAddRequest request) {
-        Trip trip = tripRepository.findById(tripId)
-                .orElseThrow(() -> new RuntimeException("行程不存在"));
+    public BudgetAnalytics getBudgetAnalytics(String tripId) {
+        Query query = byTripId(tripId);
+        query.fields().include("budget");
+        Trip trip = mongoTemplate.findOne(query, Trip.class);
+        if (trip == null) {
+            throw new RuntimeException("行程不存在");
+        }
+        Budget budget = trip.getBudget() != null ? trip.getBudget() : new Budget();
+        Map<String, Double> allocations = budget.getAllocations() != null ? budget.getAllocations() : Map.of();
+        Map<String, Double> spentByCategory = budget.getSpentByCategory() != null ? budget.getSpentByCategory() : Map.of();
 
-        // 初始化预算（如果需要）
-        if (trip.getBudget() == null) {
-            trip.setBudget(new Budget());
-            trip.getBudget().setExpenses(new ArrayList<>());
+        // 先列出有预算分配的类别，再列出未分配预算但有花费的类别
+        Set<String> categories = new LinkedHashSet<>(allocations.keySet());
+        Set<String> allocatedKeys = new HashSet<>();
+        for (String category : allocations.keySet()) {
+            allocatedKeys.add(BudgetTotals.categoryKey(category));
+        }
+        for (Map.Entry<String, Double> entry : spentByCategory.entrySet()) {
+            if (round(entry.getValue()) != 0 && !allocatedKeys.contains(entry.getKey())) {
+                categories.add(entry.getKey());
+            }
+        }
+        List<BudgetAnalytics.CategorySpend> categorySpends = new ArrayList<>();
+        for (String category : categories) {
+            double allocated = round(allocations.getOrDefault(category, 0.0));
+            double spent = round(spentByCategory.getOrDefault(BudgetTotals.categoryKey(category), 0.0));
+            BudgetAnalytics.CategorySpend categorySpend = new BudgetAnalytics.CategorySpend();
+            categorySpend.setCategory(category);
+            categorySpend.setAllocated(allocated);
+            categorySpend.setSpent(spent);
+            categorySpend.setRemaining(round(allocated - spent));
+            categorySpend.setUsageRate(allocated > 0 ? round(spent / allocated) : null);
+            categorySpends.add(categorySpend);
+        }
+
+        Map<String, Double> dailySpend = new TreeMap<>();
+        if (budget.getSpentByDay() != null) {
+            budget.getSpentByDay().forEach((day, amount) -> {
+                if (round(amount) != 0) {
+                    dailySpend.put(day, round(amount));
+                }
+            });
         }
 
+        BudgetAnalytics analytics = new BudgetAnalytics();
+        analytics.setTotalBudget(round(budget.getTotalBudget()));
+        analytics.setSpentAmount(round(budget.getSpentAmount()));
+        analytics.setRemainingAmount(round(budget.getRemainingAmount()));
+        analytics.setCategories(categorySpends);
+        analytics.setDailySpend(dailySpend);
+        return analytics;
+    }
+
+    @Override
+    public Expense addExpense(String tripId, ExpenseAddRequest request) {
         // 创建新费用
         Expense expense = new Expense();
         expense.setId(UUID.randomUUID().toString());
@@ -63,48 +146,41 @@ public class BudgetServiceImpl implements BudgetService {
         expense.setDescription(request.getDescription());
         expense.setReceiptImage(request.getReceiptImage());
 
-        // 添加到费用列表
-        List<Expense> expenses = trip.getBudget().getExpenses();
-        if (expenses == null) {
-            expenses = new ArrayList<>();
-        }
-        expenses.add(expense);
-        trip.getBudget().setExpenses(expenses);
-
-        // 更新预算总额
-        updateBudgetTotals(tripId);
-
-        tripRepository.save(trip);
+        // 与同一行程并发新增的费用合并写入（累加行程金额并追加到费用桶），写入完成后返回
+        expenseWriteCombiner.write(tripId, expense);
         return expense;
     }
 
     @Override
     public void deleteExpense(String tripId, String expenseId) {
-        Trip trip = tripRepository.findById(tripId)
-                .orElseThrow(() -> new RuntimeException("行程不存在"));
+        // 先在行程上标记写入开始，核对任务不会在移除费用与扣减金额之间修正该行程
+        UpdateResult result = mongoTemplate.updateFirst(byTripId(tripId), BudgetTotals.beginWrite(new Update()), Trip.class);
+        if (result.getMatchedCount() == 0) {
+            throw new RuntimeException("行程不存在");
+        }
 
-        if (trip.getBudget() != null && trip.getBudget().getExpenses() != null) {
-            List<Expense> expenses = trip.getBudget().getExpenses();
-            boolean removed = expenses.removeIf(expense -> expense.getId().equals(expenseId));
-            
-            if (removed) {
-                updateBudgetTotals(tripId);
-                tripRepository.save(trip);
-            } else {
-                throw new RuntimeException("费用不存在");
-            }
+        // 移除费用的同时取回被移除的那一条，并发删除同一费用时只有一次能取到
+        ExpenseBucket removed;
+        try {
+            Query query = new Query(Criteria.where("tripId").is(tripId).and("expenses.id").is(expenseId));
+            query.fields().elemMatch("expenses", Criteria.where("_id").is(expenseId));
+            removed = mongoTemplate.findAndModify(query,
+                    new Update().pull("expenses", new Document("id", expenseId)).inc("count", -1),
+                    ExpenseBucket.class);
+        } catch (RuntimeException e) {
+            mongoTemplate.updateFirst(byTripId(tripId), BudgetTotals.endWrite(new Update()), Trip.class);
+            throw e;
         }
+        if (removed == null || removed.getExpenses() == null || removed.getExpenses().isEmpty()) {
+            mongoTemplate.updateFirst(byTripId(tripId), BudgetTotals.endWrite(new Update()), Trip.class);
+            throw new RuntimeException("费用不存在");
+        }
+
+        mongoTemplate.updateFirst(byTripId(tripId), BudgetTotals.endWrite(BudgetTotals.refund(removed.getExpenses())), Trip.class);
     }
 
     @Override
     public Budget createBudgetAllocations(String tripId, BudgetAllocationRequest request) {
-        Trip trip = tripRepository.findById(tripId)
-                .orElseThrow(() -> new RuntimeException("行程不存在"));
-
-        if (trip.getBudget() == null) {
-            trip.setBudget(new Budget());
-        }
-
         // 转换AllocationItem列表为Map<String, Double>进行存储
         Map<String, Double> allocationMap = new HashMap<>();
         if (request.getAllocations() != null) {
@@ -113,76 +189,76 @@ public class BudgetServiceImpl implements BudgetService {
             }
         }
         
-        // 设置预算分配
-        trip.getBudget().setAllocations(allocationMap);
-        
-        // 设置总预算：通过allocation中的amount累加计算得出
-        Double totalBudget = allocationMap.values().stream().mapToDouble(Double::doubleValue).sum();
-        trip.getBudget().setTotalBudget(totalBudget);
-        
-        // 初始化其他预算信息
-        if (trip.getBudget().getExpenses() == null) {
-            trip.getBudget().setExpenses(new ArrayList<>());
-        }
-        
-        // 更新已花费金额
-        updateBudgetTotals(tripId);
-        
-        // 更新剩余金额
-        updateRemainingAmount(trip);
-
-        tripRepository.save(trip);
-        return trip.getBudget();
+        return updateBudgetAllocations(tripId, allocationMap);
     }
 
     @Override
     public Budget updateBudgetAllocations(String tripId, Map<String, Double> allocations) {
-        Trip trip = tripRepository.findById(tripId)
-                .orElseThrow(() -> new RuntimeException("行程不存在"));
-
-        if (trip.getBudget() == null) {
-            trip.setBudget(new Budget());
+        // 覆盖现有分配，并在同一次更新中返回更新后的预算
+        Query query = byTripId(tripId);
+        query.fields().include("budget");
+        Trip trip = mongoTemplate.findAndModify(query, allocationsUpdate(allocations),
+                FindAndModifyOptions.options().returnNew(true), Trip.class);
+        if (trip == null) {
+            throw new RuntimeException("行程不存在");
         }
 
-        // 覆盖现有分配
-        trip.getBudget().setAllocations(new HashMap<>(allocations));
-        
-        // 设置总预算：通过allocation中的amount累加计算得出
-        Double totalBudget = allocations.values().stream().mapToDouble(Double::doubleValue).sum();
-        trip.getBudget().setTotalBudget(totalBudget);
-        
-        // 更新已花费金额
-        updateBudgetTotals(tripId);
-        
-        // 更新剩余金额
-        updateRemainingAmount(trip);
-
-        tripRepository.save(trip);
+        trip.getBudget().setExpenses(loadExpenses(tripId));
         return trip.getBudget();
     }
 
+    /**
+     * 用一次更新写入生成的预算分配，不先读取行程，结果与 updateBudgetAllocations 一致
+     */
+    @Override
+    public void applyBudgetAllocations(String tripId, Map<String, Double> allocations) {
+        UpdateResult result = mongoTemplate.updateFirst(byTripId(tripId), allocationsUpdate(allocations), Trip.class);
+        if (result.getMatchedCount() == 0) {
+            throw new RuntimeException("行程不存在");
+        }
+    }
+
+    /**
+     * 按费用桶中的明细重新计算已花费、剩余金额及按类别、日期的汇总，与后台核对使用同一套规则
+     */
     @Override
     public void updateBudgetTotals(String tripId) {
-        Trip trip = tripRepository.findById(tripId)
-                .orElseThrow(() -> new RuntimeException("行程不存在"));
+        budgetReconciler.repair(tripId);
+    }
 
-        if (trip.getBudget() != null && trip.getBudget().getExpenses() != null) {
-            // 计算已花费金额
-            Double spentAmount = trip.getBudget().getExpenses().stream()
-                    .mapToDouble(Expense::getAmount)
-                    .sum();
-            trip.getBudget().setSpentAmount(spentAmount);
-            
-            // 直接更新剩余金额（remainingAmount = totalBudget - spentAmount）
-            Double totalBudget = trip.getBudget().getTotalBudget() != null ? trip.getBudget().getTotalBudget() : 0.0;
-            trip.getBudget().setRemainingAmount(totalBudget - spentAmount);
-            // 移除这里的保存操作，因为会在调用方法中保存，避免重复保存
-        }
+    @Override
+    public void deleteExpensesByTripId(String tripId) {
+        expenseBucketRepository.deleteByTripId(tripId);
     }
 
-    private void updateRemainingAmount(Trip trip) {
-        Double totalBudget = trip.getBudget().getTotalBudget() != null ? trip.getBudget().getTotalBudget() : 0.0;
-        Double spentAmount = trip.getBudget().getSpentAmount() != null ? trip.getBudget().getSpentAmount() : 0.0;
-        trip.getBudget().setRemainingAmount(totalBudget - spentAmount);
+    // 覆盖预算分配：总预算由分配累加得出，剩余金额按库中当前的已花费金额在服务端计算，不覆盖并发累加的金额
+    private static AggregationUpdate allocationsUpdate(Map<String, Double> allocations) {
+        double totalBudget = allocations.values().stream().mapToDouble(Double::doubleValue).sum();
+        return AggregationUpdate.update()
+                .set("budget.allocations").toValue(new HashMap<>(allocations))
+                .set("budget.totalBudget").toValue(totalBudget)
+                .set("budget.remainingAmount").toValue(ArithmeticOperators.Subtract.valueOf(totalBudget)
+                        .subtract(ConditionalOperators.ifNull("budget.spentAmount").then(0.0)))
+                .set("updatedAt").toValue(new Date());
+    }
+
+    // 金额保留两位小数，去掉增量累加产生的浮点误差
+    private static double round(Double value) {
+        return value != null ? Math.round(value * 100) / 100.0 : 0.0;
+    }
+
+    private static Query byTripId(String tripId) {
+        return new Query(Criteria.where("_id").is(tripId));
+    }
+
+    // 按费用桶的创建顺序读取行程的全部费用
+    private List<Expense> loadExpenses(String tripId) {
+        List<Expense> expenses = new ArrayList<>();
+        for (ExpenseBucket bucket : expenseBucketRepository.findByTripIdOrderByIdAsc(tripId)) {
+            if (bucket.getExpenses() != null) {
+                expenses.addAll(bucket.getExpenses());
+            }
+        }
+        return expenses;
     }
-}
\ No newline at end of file
+}
@@ -24,6 +24,22 @@ public class TravelRouteServiceImpl implements TravelRouteService {
         return routeRepository.save(route);
     }
 
+    /**
+     * 批量保存路线，一次 insertMany 写入全部文档
+     */
+    @Override
+    public List<TravelRoute> createRoutes(List<TravelRoute> routes) {
+        if (routes.isEmpty()) {
+            return routes;
+        }
+        Date now = new Date();
+        for (TravelRoute route : routes) {
+            route.setCreatedAt(now);
+            route.setUpdatedAt(now);
+        }
+        return routeRepository.insert(routes);
+    }
+
     @Override
     public List<TravelRoute> getRoutesByTripId(String tripId) {
         return routeRepository.findByTripIdOrderByDayNumberAsc(tripId);
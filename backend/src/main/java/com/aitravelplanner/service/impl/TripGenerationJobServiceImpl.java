@@ -0,0 +1,288 @@
+package com.aitravelplanner.service.impl;
+
+import com.aitravelplanner.dto.TripCreateRequest;
+import com.aitravelplanner.model.Trip;
+import com.aitravelplanner.model.TripGenerationJob;
+import com.aitravelplanner.repository.TripGenerationJobRepository;
+import com.aitravelplanner.service.TravelRouteService;
+import com.aitravelplanner.service.TripGenerationJobService;
+import com.aitravelplanner.service.TripGenerationService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AI行程生成任务服务：任务持久化到MongoDB，由有界线程池执行，重启后自动恢复未完成任务。
+ * 执行前以 findAndModify 原子地认领任务（PENDING 或租约已过期的 RUNNING -> RUNNING，并写入执行实例与租约到期时间），
+ * 执行中定期续约；多个实例同时恢复或重复派发同一任务时只有一个能认领成功，之后的状态写入都要求仍由本实例持有。
+ */
+@Service
+public class TripGenerationJobServiceImpl implements TripGenerationJobService {
+    private static final Logger logger = LoggerFactory.getLogger(TripGenerationJobServiceImpl.class);
+
+    @Autowired
+    private TripGenerationJobRepository jobRepository;
+
+    @Autowired
+    private TripGenerationService tripGenerationService;
+
+    @Autowired
+    private TravelRouteService travelRouteService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    @Qualifier("tripGenerationJobExecutor")
+    private ThreadPoolTaskExecutor jobExecutor;
+
+    // 单个任务最多执行次数，避免异常任务在每次重启后反复执行
+    @Value("${ai.generation.job.max-attempts:3}")
+    private int maxAttempts;
+
+    // 执行租约时长，执行实例中断后，租约到期的任务才会被其他实例接管
+    @Value("${ai.generation.job.lease-millis:300000}")
+    private long leaseMillis;
+
+    // 本实例标识，写入任务的 owner 字段
+    private final String instanceId = ManagementFactory.getRuntimeMXBean().getName() + "-"
+            + UUID.randomUUID().toString().substring(0, 8);
+
+    // 本实例已派发（排队或执行中）的任务，避免重复派发，并据此续约
+    private final Set<String> localJobs = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public TripGenerationJob submitJob(TripCreateRequest request) {
+        TripGenerationJob job = new TripGenerationJob();
+        job.setUserId(request.getUserId());
+        job.setRequest(request);
+        job.setStatus(TripGenerationJob.Status.PENDING);
+        job.setAttempts(0);
+        job.setCreatedAt(new Date());
+        job.setUpdatedAt(new Date());
+        TripGenerationJob savedJob = jobRepository.save(job);
+
+        try {
+            dispatch(savedJob.getId());
+        } catch (TaskRejectedException e) {
+            markFailed(savedJob.getId(), Criteria.where("status").is(TripGenerationJob.Status.PENDING), "生成任务队列已满");
+            throw e;
+        }
+        logger.info("AI生成任务 {} 已提交，用户ID: {}", savedJob.getId(), request.getUserId());
+        return savedJob;
+    }
+
+    @Override
+    public Optional<TripGenerationJob> getJob(String jobId) {
+        return jobRepository.findById(jobId);
+    }
+
+    /**
+     * 应用启动完成后恢复未完成的任务：等待执行的任务，以及执行实例已中断（租约过期）的任务
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        try {
+            Query query = new Query(new Criteria().orOperator(
+                    Criteria.where("status").is(TripGenerationJob.Status.PENDING), leaseExpired(new Date())));
+            query.fields().include("_id", "status");
+            for (TripGenerationJob job : mongoTemplate.find(query, TripGenerationJob.class)) {
+                if (dispatchQuietly(job.getId())) {
+                    logger.info("恢复未完成的AI生成任务 {}，状态: {}", job.getId(), job.getStatus());
+                }
+            }
+        } catch (Exception e) {
+            logger.error("恢复AI生成任务失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定期为本实例执行中的任务续约，并接管其他实例中断后租约已过期的任务
+     */
+    @Scheduled(initialDelayString = "${ai.generation.job.lease-renew-millis:60000}",
+            fixedDelayString = "${ai.generation.job.lease-renew-millis:60000}")
+    public void renewLeases() {
+        try {
+            if (!localJobs.isEmpty()) {
+                mongoTemplate.updateMulti(ownedBy(List.copyOf(localJobs)),
+                        new Update().set("leaseExpiresAt", leaseExpiry()), TripGenerationJob.class);
+            }
+            Query expired = new Query(leaseExpired(new Date()));
+            expired.fields().include("_id");
+            for (TripGenerationJob job : mongoTemplate.find(expired, TripGenerationJob.class)) {
+                if (dispatchQuietly(job.getId())) {
+                    logger.warn("AI生成任务 {} 的执行租约已过期，由本实例接管", job.getId());
+                }
+            }
+        } catch (Exception e) {
+            logger.error("AI生成任务续约失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 停止接收新任务，并等待进行中的任务执行完毕；超时未完成的任务保持RUNNING状态并立即释放租约，下次启动时恢复
+     */
+    @PreDestroy
+    public void drainJobs() {
+        logger.info("等待进行中的AI生成任务完成，活跃任务数: {}", jobExecutor.getActiveCount());
+        jobExecutor.shutdown();
+        if (!localJobs.isEmpty()) {
+            try {
+                mongoTemplate.updateMulti(ownedBy(List.copyOf(localJobs)),
+                        new Update().set("leaseExpiresAt", new Date()), TripGenerationJob.class);
+            } catch (Exception e) {
+                logger.warn("释放AI生成任务租约失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void dispatch(String jobId) {
+        if (!localJobs.add(jobId)) {
+            return;
+        }
+        try {
+            jobExecutor.execute(() -> runJob(jobId));
+        } catch (TaskRejectedException e) {
+            localJobs.remove(jobId);
+            throw e;
+        }
+    }
+
+    private boolean dispatchQuietly(String jobId) {
+        try {
+            dispatch(jobId);
+            return true;
+        } catch (TaskRejectedException e) {
+            logger.warn("派发AI生成任务 {} 失败，任务队列已满", jobId);
+            return false;
+        }
+    }
+
+    private void runJob(String jobId) {
+        try {
+            TripGenerationJob job = claim(jobId);
+            if (job == null) {
+                // 已完成、已由其他实例认领，或已超过最大执行次数
+                markFailed(jobId, new Criteria().andOperator(Criteria.where("attempts").gte(maxAttempts),
+                        claimable(new Date())), "超过最大执行次数");
+                return;
+            }
+            execute(job);
+        } finally {
+            localJobs.remove(jobId);
+        }
+    }
+
+    private void execute(TripGenerationJob job) {
+        String jobId = job.getId();
+        try {
+            TripCreateRequest request = job.getRequest();
+            String tripId = job.getTripId();
+            if (tripId == null) {
+                Trip createdTrip = tripGenerationService.createBaseTrip(request);
+                tripId = createdTrip.getId();
+                if (!updateOwned(jobId, new Update().set("tripId", tripId))) {
+                    logger.warn("AI生成任务 {} 已不再由本实例执行，放弃本次执行，已创建的行程: {}", jobId, tripId);
+                    return;
+                }
+            } else {
+                // 恢复的任务：清理上次中断时已写入的部分路线，复用同一行程
+                travelRouteService.deleteRoutesByTripId(tripId);
+            }
+
+            tripGenerationService.generateTripDetails(tripId, request);
+
+            if (updateOwned(jobId, new Update()
+                    .set("status", TripGenerationJob.Status.SUCCEEDED)
+                    .unset("errorMessage")
+                    .unset("leaseExpiresAt")
+                    .set("finishedAt", new Date()))) {
+                logger.info("AI生成任务 {} 完成，行程ID: {}", jobId, tripId);
+            } else {
+                logger.warn("AI生成任务 {} 已不再由本实例执行，不记录本次结果", jobId);
+            }
+        } catch (Exception e) {
+            logger.error("AI生成任务 {} 失败: {}", jobId, e.getMessage());
+            markFailed(jobId, Criteria.where("owner").is(instanceId).and("status").is(TripGenerationJob.Status.RUNNING),
+                    e.getMessage());
+        }
+    }
+
+    // 原子地认领任务并计入执行次数，无法认领时返回null
+    private TripGenerationJob claim(String jobId) {
+        Date now = new Date();
+        Query query = new Query(Criteria.where("_id").is(jobId).and("attempts").lt(maxAttempts)
+                .andOperator(claimable(now)));
+        Update update = new Update()
+                .set("status", TripGenerationJob.Status.RUNNING)
+                .set("owner", instanceId)
+                .set("leaseExpiresAt", leaseExpiry())
+                .set("startedAt", now)
+                .set("updatedAt", now)
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                TripGenerationJob.class);
+    }
+
+    // 仍由本实例执行时更新任务并顺带续约，返回是否更新成功
+    private boolean updateOwned(String jobId, Update update) {
+        update.set("updatedAt", new Date());
+        if (!update.modifies("leaseExpiresAt")) {
+            update.set("leaseExpiresAt", leaseExpiry());
+        }
+        return mongoTemplate.updateFirst(ownedBy(List.of(jobId)), update, TripGenerationJob.class).getMatchedCount() > 0;
+    }
+
+    private void markFailed(String jobId, Criteria condition, String message) {
+        Date now = new Date();
+        Query query = new Query(Criteria.where("_id").is(jobId).andOperator(condition));
+        mongoTemplate.updateFirst(query, new Update()
+                .set("status", TripGenerationJob.Status.FAILED)
+                .set("errorMessage", message)
+                .unset("leaseExpiresAt")
+                .set("finishedAt", now)
+                .set("updatedAt", now), TripGenerationJob.class);
+    }
+
+    // 可认领：等待执行，或执行中但租约已过期
+    private Criteria claimable(Date now) {
+        return new Criteria().orOperator(Criteria.where("status").is(TripGenerationJob.Status.PENDING), leaseExpired(now));
+    }
+
+    // 执行中但租约已过期（或没有租约的旧任务）
+    private Criteria leaseExpired(Date now) {
+        return Criteria.where("status").is(TripGenerationJob.Status.RUNNING).orOperator(
+                Criteria.where("leaseExpiresAt").lt(now), Criteria.where("leaseExpiresAt").is(null));
+    }
+
+    private Query ownedBy(List<String> jobIds) {
+        return new Query(Criteria.where("_id").in(jobIds).and("owner").is(instanceId)
+                .and("status").is(TripGenerationJob.Status.RUNNING));
+    }
+
+    private Date leaseExpiry() {
+        return new Date(System.currentTimeMillis() + leaseMillis);
+    }
+}
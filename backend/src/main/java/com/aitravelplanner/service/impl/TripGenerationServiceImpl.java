@@ -0,0 +1,888 @@
+package com.aitravelplanner.service.impl;
+
+import com.aitravelplanner.dto.TripCreateRequest;
+import com.aitravelplanner.llm.LlmResult;
+import com.aitravelplanner.model.Trip;
+import com.aitravelplanner.model.TravelRoute;
+import com.aitravelplanner.service.AliBaiLianService;
+import com.aitravelplanner.service.BudgetService;
+import com.aitravelplanner.service.TravelRouteService;
+import com.aitravelplanner.service.TripGenerationListener;
+import com.aitravelplanner.service.TripGenerationService;
+import com.aitravelplanner.service.TripService;
+import com.aitravelplanner.service.generation.GenerationCache;
+import com.aitravelplanner.service.generation.GenerationCacheKey;
+import com.aitravelplanner.service.generation.GenerationCoalescer;
+import com.aitravelplanner.service.generation.GenerationStats;
+import com.aitravelplanner.service.generation.GeneratedItinerary;
+import com.aitravelplanner.service.generation.RoutesStreamParser;
+import com.aitravelplanner.service.generation.SegmentOutline;
+import com.aitravelplanner.service.generation.TokenAccountant;
+import com.aitravelplanner.service.generation.TravelRouteBinder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * AI行程生成服务：创建基本行程、调用大模型生成路线与预算分配并保存
+ */
+@Service
+public class TripGenerationServiceImpl implements TripGenerationService {
+    private static final Logger logger = LoggerFactory.getLogger(TripGenerationServiceImpl.class);
+
+    // 单日行程的JSON示例，路线提示词与合并提示词共用
+    private static final String ROUTE_JSON_EXAMPLE = "    {\n      \"day\": 1,\n      \"description\": \"第1天行程描述\",\n      \"transportation\": \"交通方式\",\n      \"attractions\": [\"景点1\", \"景点2\"],\n      \"attractionDetails\": [\n        {\"name\": \"景点1\", \"latitude\": 30.123456, \"longitude\": 120.123456, \"address\": \"地址1\"},\n        {\"name\": \"景点2\", \"latitude\": 30.234567, \"longitude\": 120.234567, \"address\": \"地址2\"}\n      ],\n      \"restaurants\": [\"餐厅1\", \"餐厅2\"],\n      \"accommodations\": [\"酒店1\"],\n      \"estimatedCost\": 500\n    }";
+
+    @Autowired
+    private TripService tripService;
+
+    @Autowired
+    private TravelRouteService travelRouteService;
+
+    @Autowired
+    private BudgetService budgetService;
+
+    @Autowired
+    private AliBaiLianService aliBaiLianService;
+
+    @Autowired
+    private GenerationCache generationCache;
+
+    @Autowired
+    private GenerationCoalescer generationCoalescer;
+
+    @Autowired
+    private GenerationStats generationStats;
+
+    // 生成模式：split 路线与预算分两次并发调用；combined 单次调用同时生成
+    @Value("${ai.generation.mode:split}")
+    private String generationMode;
+
+    @Autowired
+    @Qualifier("aiCallExecutor")
+    private Executor aiCallExecutor;
+
+    // 单次大模型调用（含解析）的超时时间
+    @Value("${ai.generation.call.timeout-millis:60000}")
+    private long callTimeoutMillis;
+
+    // 超过该天数的行程拆分为多段并行生成，0 表示不分段
+    @Value("${ai.generation.segment.threshold-days:6}")
+    private int segmentThresholdDays;
+
+    // 每段的最大天数
+    @Value("${ai.generation.segment.days-per-segment:4}")
+    private int daysPerSegment;
+
+    // 生成结果（路线与预算分配）是否在同一MongoDB事务中写入，需要副本集
+    @Value("${ai.generation.persistence.transactional:false}")
+    private boolean transactionalPersistence;
+
+    @Autowired(required = false)
+    private MongoTransactionManager transactionManager;
+
+    @Override
+    public String generateTrip(TripCreateRequest request) {
+        Trip createdTrip = createBaseTrip(request);
+        String tripId = createdTrip.getId(); // ✅ 一定要从数据库返回对象中取ID
+        generateTripDetails(tripId, request);
+        return tripId;
+    }
+
+    @Override
+    public Trip createBaseTrip(TripCreateRequest request) {
+        // 1. 创建基本行程信息
+        Trip trip = new Trip();
+        trip.setUserId(request.getUserId());
+        trip.setTitle(request.getTitle());
+        trip.setDestination(request.getDestination());
+        trip.setStartDate(request.getStartDate());
+        trip.setEndDate(request.getEndDate());
+        trip.setDescription(request.getDescription() != null ? request.getDescription() : "AI生成的行程计划");
+        trip.setBudgetAmount(request.getBudgetAmount());
+        trip.setPeopleCount(request.getPeopleCount());
+        trip.setTravelPreferences(request.getTravelPreferences());
+
+        // 保存基本行程信息
+        Trip createdTrip = tripService.createTrip(trip);
+        logger.info("基本行程创建成功，行程ID: {}", createdTrip.getId());
+        return createdTrip;
+    }
+
+    @Override
+    public void generateTripDetails(String tripId, TripCreateRequest request) {
+        long generationStart = System.currentTimeMillis();
+        int days = calculateDays(request);
+        boolean segmented = segmentThresholdDays > 0 && days > segmentThresholdDays;
+        CompletableFuture<List<TravelRoute>> routesFuture;
+        CompletableFuture<Map<String, Double>> allocationsFuture;
+        if (segmented) {
+            // 2. 长行程单次响应容纳不下，按天数分段并行生成路线，预算分配单独调用
+            routesFuture = generateRoutesSegmented(tripId, request, days);
+            allocationsFuture = callAsync(
+                    "预算分配生成",
+                    () -> generateBudgetAllocations(request.getBudgetAmount(), GenerationStats.MODE_SEGMENTED),
+                    () -> generateMockBudgetAllocations(request.getBudgetAmount()));
+        } else if (GenerationStats.MODE_COMBINED.equals(generationMode)) {
+            // 2. 单次调用同时生成路线与预算分配
+            CompletableFuture<GeneratedItinerary> itineraryFuture = callAsync(
+                    "合并生成",
+                    () -> generateItineraryWithAI(tripId, request),
+                    () -> new GeneratedItinerary(generateMockRoutes(tripId, request),
+                            generateMockBudgetAllocations(request.getBudgetAmount())));
+            routesFuture = itineraryFuture.thenApply(GeneratedItinerary::getRoutes);
+            allocationsFuture = itineraryFuture.thenApply(GeneratedItinerary::getAllocations);
+        } else {
+            // 2. 并发调用大模型生成路线与预算分配（预算提示词只依赖预算金额，两者互不依赖）
+            routesFuture = callAsync(
+                    "路线生成",
+                    () -> generateRoutesWithAI(tripId, request),
+                    () -> generateMockRoutes(tripId, request));
+            allocationsFuture = callAsync(
+                    "预算分配生成",
+                    () -> generateBudgetAllocations(request.getBudgetAmount(), GenerationStats.MODE_SPLIT),
+                    () -> generateMockBudgetAllocations(request.getBudgetAmount()));
+        }
+        String mode = segmented ? GenerationStats.MODE_SEGMENTED
+                : GenerationStats.MODE_COMBINED.equals(generationMode) ? GenerationStats.MODE_COMBINED : GenerationStats.MODE_SPLIT;
+        CompletableFuture.allOf(routesFuture, allocationsFuture).whenComplete((ignored, ex) ->
+                generationStats.recordGeneration(mode, System.currentTimeMillis() - generationStart));
+
+        List<TravelRoute> aiRoutes = routesFuture.join();
+
+        try {
+            ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            // 打印原始结果
+            logger.info("=== AI生成行程路线 ===\n{}", mapper.writeValueAsString(aiRoutes));
+        } catch (Exception e) {
+            logger.warn("打印AI生成行程路线失败: {}", e.getMessage());
+        }
+
+        // 3. 批量保存路线并写入预算分配
+        for (TravelRoute route : aiRoutes) {
+            route.setTripId(tripId);
+        }
+        saveGeneratedDetails(tripId, aiRoutes, allocationsFuture);
+    }
+
+    // 路线一次 insertMany，预算分配一次更新；开启事务时两者在同一事务中提交，否则先写路线（预算分配可能仍在生成中）
+    private void saveGeneratedDetails(String tripId, List<TravelRoute> routes,
+                                      CompletableFuture<Map<String, Double>> allocationsFuture) {
+        if (transactionalPersistence && transactionManager != null) {
+            Map<String, Double> allocations = allocationsFuture.join();
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                travelRouteService.createRoutes(routes);
+                budgetService.applyBudgetAllocations(tripId, allocations);
+            });
+        } else {
+            travelRouteService.createRoutes(routes);
+            budgetService.applyBudgetAllocations(tripId, allocationsFuture.join());
+        }
+        logger.info("使用行程ID: {} 成功保存 {} 条旅行路线及预算分配", tripId, routes.size());
+    }
+
+    @Override
+    public String generateTripStreaming(TripCreateRequest request, TripGenerationListener listener) {
+        Trip createdTrip = createBaseTrip(request);
+        String tripId = createdTrip.getId();
+        listener.onTripCreated(tripId);
+
+        // 预算分配与流式路线生成并发进行；流式生成不参与各模式的调用统计
+        CompletableFuture<Map<String, Double>> allocationsFuture = callAsync(
+                "预算分配生成",
+                () -> generateBudgetAllocations(request.getBudgetAmount(), null),
+                () -> generateMockBudgetAllocations(request.getBudgetAmount()));
+
+        int days = calculateDays(request);
+        GenerationCacheKey cacheKey = GenerationCacheKey.forRoutes(request, days, generationCache.getBudgetBucketSize());
+        Optional<List<TravelRoute>> cachedRoutes = generationCache.getRoutes(cacheKey, tripId);
+
+        // 每解析出完整的一天即保存并推送
+        Set<Integer> savedDays = new HashSet<>();
+        List<TravelRoute> streamedRoutes = new ArrayList<>();
+        boolean streamFailed = false;
+        if (cachedRoutes.isPresent()) {
+            logger.info("命中路线生成缓存，缓存键: {}", cacheKey);
+            for (TravelRoute savedRoute : travelRouteService.createRoutes(cachedRoutes.get())) {
+                savedDays.add(savedRoute.getDayNumber());
+                listener.onRoute(savedRoute);
+            }
+        } else {
+            try {
+                String prompt = buildRoutePrompt(request, days);
+                RoutesStreamParser parser = new RoutesStreamParser();
+                LlmResult result = aliBaiLianService.generateStream(TokenAccountant.KIND_ROUTES, days, prompt, delta -> {
+                    for (String dayJson : parser.feed(delta)) {
+                        TravelRoute route = TravelRouteBinder.readRoute(dayJson, request.getDestination());
+                        Integer day = route.getDayNumber();
+                        if (day == null || day < 1 || day > days || savedDays.contains(day)) {
+                            // 超出行程范围或重复的天不保存，缺失的天在结束后补齐
+                            logger.warn("流式生成返回了无效的第 {} 天，行程ID: {}", day, tripId);
+                            continue;
+                        }
+                        route.setTripId(tripId);
+                        TravelRoute savedRoute = travelRouteService.createRoute(route);
+                        savedDays.add(savedRoute.getDayNumber());
+                        streamedRoutes.add(savedRoute);
+                        listener.onRoute(savedRoute);
+                    }
+                });
+                // 输出被截断时后几天缺失，按失败处理：补齐缺失天数且不写入缓存
+                if (result.isTruncated()) {
+                    logger.warn("流式生成路线被截断，行程ID: {}, 已完成 {} 天", tripId, savedDays.size());
+                    streamFailed = true;
+                } else if (savedDays.size() < days) {
+                    // 正常结束但少了某些天，同样按不完整处理
+                    logger.warn("流式生成路线缺少部分天数，行程ID: {}, 已完成 {}/{} 天", tripId, savedDays.size(), days);
+                    streamFailed = true;
+                }
+            } catch (Exception e) {
+                logger.error("流式生成路线失败，行程ID: {}, 已完成 {} 天: {}", tripId, savedDays.size(), e.getMessage());
+                streamFailed = true;
+            }
+            if (!streamFailed) {
+                generationCache.putRoutes(cacheKey, streamedRoutes);
+            }
+        }
+
+        // 流式生成中断或缺少任何一天时，用模拟数据补齐缺失的天数
+        if (streamFailed || savedDays.size() < days) {
+            logger.info("回退到模拟数据补齐行程 {} 的路线", tripId);
+            List<TravelRoute> missingRoutes = new ArrayList<>();
+            for (TravelRoute route : generateMockRoutes(tripId, request)) {
+                if (!savedDays.contains(route.getDayNumber())) {
+                    missingRoutes.add(route);
+                }
+            }
+            travelRouteService.createRoutes(missingRoutes).forEach(listener::onRoute);
+        }
+
+        Map<String, Double> allocations = allocationsFuture.join();
+        budgetService.applyBudgetAllocations(tripId, allocations);
+        listener.onBudgetAllocations(allocations);
+        logger.info("使用行程ID: {} 完成流式AI行程生成", tripId);
+        return tripId;
+    }
+
+    @Override
+    public void refreshTemplate(TripCreateRequest request) {
+        // 不读取缓存，直接调用大模型重新生成并覆盖同一缓存键下的模板
+        int days = calculateDays(request);
+        Double budgetAmount = request.getBudgetAmount();
+        double total = budgetAmount != null ? budgetAmount : 5000.0;
+        GenerationCacheKey routesKey = GenerationCacheKey.forRoutes(request, days, generationCache.getBudgetBucketSize());
+        GenerationCacheKey budgetKey = GenerationCacheKey.forBudget(budgetAmount, generationCache.getBudgetBucketSize());
+
+        boolean segmented = segmentThresholdDays > 0 && days > segmentThresholdDays;
+        if (!segmented && GenerationStats.MODE_COMBINED.equals(generationMode)) {
+            generationCoalescer.coalesceCombined(routesKey.getId() + "|" + total, () -> {
+                GeneratedItinerary generated = requestItineraryFromAI(request, days, total);
+                generationCache.putRoutes(routesKey, generated.getRoutes());
+                generationCache.putAllocations(budgetKey, budgetAmount, generated.getAllocations());
+                return generated;
+            });
+            return;
+        }
+
+        if (segmented) {
+            requestRoutesSegmented(request, days, routesKey).join();
+        } else {
+            generationCoalescer.coalesceRoutes(routesKey, () -> {
+                List<TravelRoute> generated = requestRoutesFromAI(request, days);
+                generationCache.putRoutes(routesKey, generated);
+                return generated;
+            });
+        }
+        generationCoalescer.coalesceBudget(String.valueOf(total), () -> {
+            Map<String, Double> allocations = requestBudgetFromAI(total,
+                    segmented ? GenerationStats.MODE_SEGMENTED : GenerationStats.MODE_SPLIT);
+            generationCache.putAllocations(budgetKey, budgetAmount, allocations);
+            return allocations;
+        });
+    }
+
+    /**
+     * 在大模型调用线程池中异步执行一次调用，超时、异常或线程池拒绝时各自回退到模拟数据，互不影响
+     */
+    private <T> CompletableFuture<T> callAsync(String name, Supplier<T> call, Supplier<T> fallback) {
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(call, aiCallExecutor);
+        } catch (TaskRejectedException e) {
+            logger.warn("{}线程池已满，直接回退到模拟数据", name);
+            return CompletableFuture.completedFuture(fallback.get());
+        }
+        return future
+                .orTimeout(callTimeoutMillis, TimeUnit.MILLISECONDS)
+                .exceptionally(ex -> {
+                    logger.error("{}失败或超时: {}", name, ex.getMessage());
+                    return fallback.get();
+                });
+    }
+
+    // 使用阿里百炼大模型生成旅行路线
+    private List<TravelRoute> generateRoutesWithAI(String tripId, TripCreateRequest request) {
+        int days = calculateDays(request);
+
+        // 优先使用缓存的相同参数生成结果
+        GenerationCacheKey cacheKey = GenerationCacheKey.forRoutes(request, days, generationCache.getBudgetBucketSize());
+        Optional<List<TravelRoute>> cachedRoutes = generationCache.getRoutes(cacheKey, tripId);
+        if (cachedRoutes.isPresent()) {
+            logger.info("命中路线生成缓存，缓存键: {}", cacheKey);
+            return cachedRoutes.get();
+        }
+
+        List<TravelRoute> routes;
+        
+        try {
+            // 参数相同的并发请求共享同一次大模型调用，各自复制结果并绑定到自己的行程
+            List<TravelRoute> template = generationCoalescer.coalesceRoutes(cacheKey, () -> {
+                List<TravelRoute> generated = requestRoutesFromAI(request, days);
+                // 只缓存大模型的真实结果，不缓存模拟数据
+                generationCache.putRoutes(cacheKey, generated);
+                return generated;
+            });
+            routes = GenerationCache.bindRoutes(template, tripId);
+        } catch (Exception e) {
+            logger.error("调用阿里百炼API生成路线失败: {}", e.getMessage());
+            // 出错时回退到模拟数据生成
+            logger.info("回退到模拟数据生成路线");
+            routes = generateMockRoutes(tripId, request);
+        }
+        
+        return routes;
+    }
+
+    // 调用大模型生成路线模板（不含行程ID），失败时抛出异常
+    private List<TravelRoute> requestRoutesFromAI(TripCreateRequest request, int days) {
+        // 构建提示词
+        String prompt = buildRoutePrompt(request, days);
+        
+        // 调用阿里百炼API
+        LlmResult result = aliBaiLianService.generate(TokenAccountant.KIND_ROUTES, days, prompt);
+        String generatedContent = result.getText();
+        logger.info("阿里百炼API返回内容: {}", generatedContent);
+        generationStats.recordCall(GenerationStats.MODE_SPLIT, result);
+        
+        // 单遍读取JSON并直接填充路线
+        return TravelRouteBinder.readRoutes(generatedContent, request.getDestination());
+    }
+
+    /**
+     * 分段并行生成长行程的路线：每段在大模型调用线程池中独立调用，单段失败或超时只用模拟数据补齐该段，
+     * 各段结果按天数顺序合并；所有分段都来自大模型时才写入缓存
+     */
+    private CompletableFuture<List<TravelRoute>> generateRoutesSegmented(String tripId, TripCreateRequest request, int days) {
+        GenerationCacheKey cacheKey = GenerationCacheKey.forRoutes(request, days, generationCache.getBudgetBucketSize());
+        Optional<List<TravelRoute>> cachedRoutes = generationCache.getRoutes(cacheKey, tripId);
+        if (cachedRoutes.isPresent()) {
+            logger.info("命中路线生成缓存，缓存键: {}", cacheKey);
+            return CompletableFuture.completedFuture(cachedRoutes.get());
+        }
+
+        return requestRoutesSegmented(request, days, cacheKey).thenApply(template -> {
+            template.forEach(route -> route.setTripId(tripId));
+            return template;
+        });
+    }
+
+    // 分段并行调用大模型生成路线模板（不含行程ID），所有分段都来自大模型时写入缓存。
+    // 先生成一次各段的游览区域与主要景点，各段按分到的景点规划，避免并行生成时重复安排同一景点；
+    // 概要生成失败时各段只按区域划分的提示生成，合并时仍会去掉重复的景点
+    private CompletableFuture<List<TravelRoute>> requestRoutesSegmented(TripCreateRequest request, int days,
+                                                                       GenerationCacheKey cacheKey) {
+        List<int[]> segments = splitSegments(days);
+        logger.info("共 {} 天的行程分 {} 段并行生成路线", days, segments.size());
+        return callAsync("行程分段概要生成", () -> requestOutlineFromAI(request, days, segments), () -> null)
+                .thenCompose(outline -> generateSegments(request, days, segments, outline, cacheKey));
+    }
+
+    private CompletableFuture<List<TravelRoute>> generateSegments(TripCreateRequest request, int days, List<int[]> segments,
+                                                                  List<SegmentOutline> outline, GenerationCacheKey cacheKey) {
+        AtomicBoolean degraded = new AtomicBoolean(false);
+        List<CompletableFuture<List<TravelRoute>>> futures = new ArrayList<>();
+        for (int index = 0; index < segments.size(); index++) {
+            int segmentIndex = index;
+            int[] range = segments.get(index);
+            futures.add(callAsync(
+                    "第" + range[0] + "-" + range[1] + "天路线生成",
+                    () -> requestSegmentFromAI(request, days, segments, outline, segmentIndex),
+                    () -> {
+                        degraded.set(true);
+                        return generateMockRoutes(null, request, range[0], range[1]);
+                    }));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            // 按天数合并并去掉前面已安排过的景点，模型漏掉的天用模拟数据补齐
+            TreeMap<Integer, TravelRoute> merged = new TreeMap<>();
+            for (CompletableFuture<List<TravelRoute>> future : futures) {
+                for (TravelRoute route : future.join()) {
+                    merged.putIfAbsent(route.getDayNumber(), route);
+                }
+            }
+            removeRepeatedAttractions(merged.values());
+            if (merged.size() < days) {
+                degraded.set(true);
+                for (TravelRoute route : generateMockRoutes(null, request, 1, days)) {
+                    merged.putIfAbsent(route.getDayNumber(), route);
+                }
+            }
+            List<TravelRoute> routes = new ArrayList<>(merged.values());
+            if (!degraded.get()) {
+                generationCache.putRoutes(cacheKey, routes);
+            }
+            return routes;
+        });
+    }
+
+    // 将行程天数尽量均匀地切分为若干段，每段不超过 daysPerSegment 天，返回 [起始天, 结束天]
+    private List<int[]> splitSegments(int days) {
+        int count = (days + daysPerSegment - 1) / daysPerSegment;
+        List<int[]> segments = new ArrayList<>(count);
+        int start = 1;
+        for (int i = 0; i < count; i++) {
+            int length = days / count + (i < days % count ? 1 : 0);
+            segments.add(new int[]{start, start + length - 1});
+            start += length;
+        }
+        return segments;
+    }
+
+    // 调用大模型生成各段的游览区域与主要景点，段数与分段不一致时抛出异常；同一景点只保留在最先出现的一段
+    private List<SegmentOutline> requestOutlineFromAI(TripCreateRequest request, int days, List<int[]> segments) {
+        LlmResult result = aliBaiLianService.generate(TokenAccountant.KIND_OUTLINE, days, buildOutlinePrompt(request, days, segments));
+        logger.info("阿里百炼API分段概要返回内容: {}", result.getText());
+        generationStats.recordCall(GenerationStats.MODE_SEGMENTED, result);
+
+        List<SegmentOutline> outline = TravelRouteBinder.readOutline(result.getText());
+        if (outline.size() != segments.size()) {
+            throw new RuntimeException("分段概要段数为 " + outline.size() + "，应为 " + segments.size());
+        }
+        Set<String> assigned = new HashSet<>();
+        for (SegmentOutline segment : outline) {
+            List<String> attractions = new ArrayList<>();
+            for (String attraction : segment.getAttractions()) {
+                String key = attractionKey(attraction);
+                if (!key.isEmpty() && assigned.add(key)) {
+                    attractions.add(attraction);
+                }
+            }
+            segment.setAttractions(attractions);
+        }
+        return outline;
+    }
+
+    // 构建分段概要提示词：按城市区域划分各段，并把主要景点分配到各段
+    private String buildOutlinePrompt(TripCreateRequest request, int days, List<int[]> segments) {
+        StringBuilder prompt = new StringBuilder();
+        appendTripRequirements(prompt, request, days);
+        prompt.append("\n\n行程较长，将分").append(segments.size()).append("段分别规划：");
+        for (int i = 0; i < segments.size(); i++) {
+            int[] range = segments.get(i);
+            prompt.append(i == 0 ? "" : "、").append("第").append(range[0]).append("-").append(range[1]).append("天");
+        }
+        prompt.append("。请先按城市的不同区域为每段确定游览区域，并把主要景点分配到各段，")
+              .append("同一景点只能出现在一段中，每段的主要景点约为该段天数的2到3倍。")
+              .append("\n\n请按以下JSON格式返回，segments 按段的顺序排列，确保返回内容是有效的JSON格式:")
+              .append("\n{\n  \"segments\": [\n    {\"area\": \"区域名称\", \"attractions\": [\"景点1\", \"景点2\"]}\n  ]\n}")
+              .append("\n\n请确保返回的是纯JSON格式，不要包含其他文字说明。");
+        return prompt.toString();
+    }
+
+    // 按天数顺序去掉之前的天已安排过的景点，对应的景点详情一并移除
+    private static void removeRepeatedAttractions(Collection<TravelRoute> routes) {
+        Set<String> previousDays = new HashSet<>();
+        for (TravelRoute route : routes) {
+            if (route.getAttractions() == null) {
+                continue;
+            }
+            List<String> kept = new ArrayList<>();
+            Set<String> today = new HashSet<>();
+            for (String attraction : route.getAttractions()) {
+                String key = attractionKey(attraction);
+                if (!previousDays.contains(key)) {
+                    kept.add(attraction);
+                    today.add(key);
+                }
+            }
+            if (kept.size() < route.getAttractions().size()) {
+                route.setAttractions(kept);
+                if (route.getAttractionDes() != null) {
+                    List<Map<String, Object>> keptDes = new ArrayList<>();
+                    for (Map<String, Object> des : route.getAttractionDes()) {
+                        if (!previousDays.contains(attractionKey(Objects.toString(des.get("name"), "")))) {
+                            keptDes.add(des);
+                        }
+                    }
+                    route.setAttractionDes(keptDes);
+                }
+            }
+            today.remove("");
+            previousDays.addAll(today);
+        }
+    }
+
+    // 景点名称比较时忽略空白与大小写
+    private static String attractionKey(String attraction) {
+        return attraction == null ? "" : attraction.replaceAll("\\s+", "").toLowerCase();
+    }
+
+    // 调用大模型生成一段路线，只保留本段范围内的天数，模型从第1天开始编号时按段起始天平移
+    private List<TravelRoute> requestSegmentFromAI(TripCreateRequest request, int days, List<int[]> segments,
+                                                   List<SegmentOutline> outline, int index) {
+        int[] range = segments.get(index);
+        int segmentDays = range[1] - range[0] + 1;
+        String prompt = buildSegmentPrompt(request, days, segments, outline, index);
+        LlmResult result = aliBaiLianService.generate(TokenAccountant.KIND_ROUTES, segmentDays, prompt);
+        logger.info("阿里百炼API第{}-{}天路线返回内容: {}", range[0], range[1], result.getText());
+        generationStats.recordCall(GenerationStats.MODE_SEGMENTED, result);
+
+        List<TravelRoute> generated = TravelRouteBinder.readRoutes(result.getText(), request.getDestination());
+        List<TravelRoute> routes = new ArrayList<>(segmentDays);
+        for (int i = 0; i < generated.size(); i++) {
+            TravelRoute route = generated.get(i);
+            Integer day = route.getDayNumber();
+            if (day == null || day < range[0] || day > range[1]) {
+                route.setDayNumber(range[0] + i);
+            }
+            if (route.getDayNumber() <= range[1]) {
+                routes.add(route);
+            }
+        }
+        return routes;
+    }
+
+    // 构建分段路线提示词：附带全程概况、相邻分段的范围，以及概要中本段的区域与景点和其他段已分配的景点
+    private String buildSegmentPrompt(TripCreateRequest request, int days, List<int[]> segments,
+                                      List<SegmentOutline> outline, int index) {
+        int[] range = segments.get(index);
+        StringBuilder prompt = new StringBuilder();
+        appendTripRequirements(prompt, request, days);
+        prompt.append("\n\n行程较长，将分").append(segments.size()).append("段分别规划，本次只需规划第")
+              .append(range[0]).append("天至第").append(range[1]).append("天，day 取值为")
+              .append(range[0]).append("到").append(range[1]).append("。");
+        if (outline != null) {
+            SegmentOutline own = outline.get(index);
+            prompt.append(" 本段游览区域: ").append(own.getArea())
+                  .append("，请主要安排以下景点: ").append(String.join("、", own.getAttractions())).append("。");
+            List<String> others = new ArrayList<>();
+            for (int i = 0; i < outline.size(); i++) {
+                if (i != index) {
+                    others.addAll(outline.get(i).getAttractions());
+                }
+            }
+            if (!others.isEmpty()) {
+                prompt.append(" 以下景点已安排在其他段，本段不要再安排: ").append(String.join("、", others)).append("。");
+            }
+        } else {
+            prompt.append(" 请按城市的不同区域划分各段，本段为第").append(index + 1).append("段，")
+                  .append("优先安排相应区域的景点，不要安排全程其他天可能重复游览的同一主要景点。");
+        }
+        if (index > 0) {
+            int[] previous = segments.get(index - 1);
+            prompt.append(" 第").append(previous[0]).append("-").append(previous[1])
+                  .append("天由上一段规划，第").append(range[0]).append("天请与其自然衔接。");
+        }
+        if (index < segments.size() - 1) {
+            int[] next = segments.get(index + 1);
+            prompt.append(" 第").append(next[0]).append("-").append(next[1])
+                  .append("天由下一段规划，第").append(range[1]).append("天结束时请便于继续后续行程。");
+        }
+        prompt.append("\n\n请按以下JSON格式返回行程规划，确保返回内容是有效的JSON格式:")
+              .append("\n{\n  \"routes\": [\n").append(ROUTE_JSON_EXAMPLE).append("\n  ]\n}")
+              .append("\n\n请确保返回的是纯JSON格式，不要包含其他文字说明。");
+        return prompt.toString();
+    }
+
+    // 计算行程天数
+    private int calculateDays(TripCreateRequest request) {
+        long diffInMillies = request.getEndDate().getTime() - request.getStartDate().getTime();
+        return (int) (diffInMillies / (1000 * 60 * 60 * 24)) + 1;
+    }
+
+    // 构建旅行路线提示词
+    private String buildRoutePrompt(TripCreateRequest request, int days) {
+        StringBuilder prompt = new StringBuilder();
+        appendTripRequirements(prompt, request, days);
+        
+        prompt.append("\n\n请按以下JSON格式返回行程规划，确保返回内容是有效的JSON格式:")
+              .append("\n{\n  \"routes\": [\n").append(ROUTE_JSON_EXAMPLE).append("\n  ]\n}")
+              .append("\n\n请确保返回的是纯JSON格式，不要包含其他文字说明。");
+        return prompt.toString();
+    }
+
+    // 追加目的地、天数、旅行偏好与特殊需求
+    private void appendTripRequirements(StringBuilder prompt, TripCreateRequest request, int days) {
+        prompt.append("请为我规划一段在")
+              .append(request.getDestination())
+              .append("的")
+              .append(days)
+              .append("天旅行行程。");
+        
+        if (request.getTravelPreferences() != null && !request.getTravelPreferences().isEmpty()) {
+            prompt.append(" 旅行偏好包括: ");
+            for (int i = 0; i < request.getTravelPreferences().size(); i++) {
+                prompt.append(request.getTravelPreferences().get(i));
+                if (i < request.getTravelPreferences().size() - 1) {
+                    prompt.append("、");
+                }
+            }
+        }
+        
+        if (request.getSpecialNeeds() != null && !request.getSpecialNeeds().isEmpty()) {
+            prompt.append(" 特殊需求: ").append(request.getSpecialNeeds());
+        }
+    }
+
+    // 构建同时包含路线与预算分配的合并提示词
+    private String buildItineraryPrompt(TripCreateRequest request, int days, double totalBudget) {
+        StringBuilder prompt = new StringBuilder();
+        appendTripRequirements(prompt, request, days);
+        prompt.append(" 总预算为").append(totalBudget).append("元，请同时给出预算分配方案。");
+        prompt.append("\n\n请按以下JSON格式同时返回行程规划与预算分配，确保返回内容是有效的JSON格式:")
+              .append("\n{\n  \"routes\": [\n").append(ROUTE_JSON_EXAMPLE).append("\n  ],")
+              .append("\n  \"budget\": {\"住宿\": 1500, \"餐饮\": 1000, \"交通\": 750, \"门票\": 1000, \"购物\": 500, \"其他\": 250}\n}")
+              .append("\n\n请确保预算各项总和接近总预算，且返回的是纯JSON格式，不要包含其他文字说明。");
+        return prompt.toString();
+    }
+
+    // 备用的模拟数据生成方法
+    private List<TravelRoute> generateMockRoutes(String tripId, TripCreateRequest request) {
+        return generateMockRoutes(tripId, request, 1, calculateDays(request));
+    }
+
+    // 生成第 fromDay 天至第 toDay 天的模拟路线
+    private List<TravelRoute> generateMockRoutes(String tripId, TripCreateRequest request, int fromDay, int toDay) {
+        List<TravelRoute> routes = new ArrayList<>();
+        
+        // 计算行程天数
+        int days = calculateDays(request);
+        
+        // 生成每天的路线
+        Calendar startCalendar = Calendar.getInstance();
+        startCalendar.setTime(request.getStartDate());
+        startCalendar.add(Calendar.DAY_OF_MONTH, fromDay - 1);
+        Date currentDate = startCalendar.getTime();
+        for (int i = fromDay; i <= toDay; i++) {
+            TravelRoute route = new TravelRoute();
+            route.setTripId(tripId);
+            route.setDayNumber(i);
+            route.setCreatedAt(new Date());
+            route.setUpdatedAt(new Date());
+            
+            // 根据目的地和旅行偏好生成路线内容
+            String destination = request.getDestination();
+            List<String> preferences = request.getTravelPreferences();
+            
+            // 模拟生成交通信息
+            route.setTransportation("公共交通/步行");
+            
+            // 模拟生成景点信息
+            List<String> attractions = new ArrayList<>();
+            if (preferences != null && preferences.contains("文化")) {
+                attractions.add(destination + "博物馆");
+                attractions.add(destination + "历史街区");
+            } else if (preferences != null && preferences.contains("自然")) {
+                attractions.add(destination + "国家公园");
+                attractions.add(destination + "海滩/湖泊");
+            } else if (preferences != null && preferences.contains("美食")) {
+                attractions.add(destination + "美食街");
+                attractions.add(destination + "当地市场");
+            } else {
+                attractions.add(destination + "主要景点" + i);
+                attractions.add(destination + "热门观光地" + i);
+            }
+            route.setAttractions(attractions);
+            
+            // 模拟生成景点经纬度信息
+            List<Map<String, Object>> attractionDes = new ArrayList<>();
+            for (int j = 0; j < attractions.size(); j++) {
+                Map<String, Object> des = new HashMap<>();
+                des.put("name", attractions.get(j));
+                // 生成随机经纬度（模拟数据）
+                double baseLat = 30.0 + (Math.random() - 0.5) * 2;
+                double baseLng = 120.0 + (Math.random() - 0.5) * 2;
+                des.put("latitude", Math.round(baseLat * 1000000) / 1000000.0);
+                des.put("longitude", Math.round(baseLng * 1000000) / 1000000.0);
+                des.put("address", destination + "市某区某路" + j + "号");
+                attractionDes.add(des);
+            }
+            route.setAttractionDes(attractionDes);
+            
+            // 模拟生成餐厅信息
+            List<String> restaurants = new ArrayList<>();
+            restaurants.add("当地特色餐厅" + i);
+            restaurants.add("人气餐厅" + i);
+            route.setRestaurants(restaurants);
+            
+            // 模拟生成住宿信息
+            List<String> accommodations = new ArrayList<>();
+            if (preferences != null && preferences.contains("豪华")) {
+                accommodations.add(destination + "五星级酒店" + i);
+            } else if (preferences != null && preferences.contains("经济型")) {
+                accommodations.add(destination + "经济型酒店" + i);
+            } else {
+                accommodations.add(destination + "商务酒店" + i);
+            }
+            route.setAccommodations(accommodations);
+            
+            // 模拟生成描述
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+            route.setDescription("第" + i + "天行程安排（" + sdf.format(currentDate) + "）: 探索" + destination + "的主要景点和美食。");
+            
+            // 模拟生成预计费用
+            route.setEstimatedCost(request.getBudgetAmount() != null ? request.getBudgetAmount() / days : 500.0);
+            
+            routes.add(route);
+            
+            // 增加一天
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTime(currentDate);
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            currentDate = calendar.getTime();
+        }
+        
+        return routes;
+    }
+    
+    // 使用阿里百炼大模型生成预算分配信息
+    private Map<String, Double> generateBudgetAllocations(Double totalBudget, String mode) {
+        GenerationCacheKey cacheKey = GenerationCacheKey.forBudget(totalBudget, generationCache.getBudgetBucketSize());
+        Optional<Map<String, Double>> cachedAllocations = generationCache.getAllocations(cacheKey, totalBudget);
+        if (cachedAllocations.isPresent()) {
+            logger.info("命中预算分配缓存，缓存键: {}", cacheKey);
+            return cachedAllocations.get();
+        }
+
+        try {
+            double total = totalBudget != null ? totalBudget : 5000.0;
+
+            // 预算提示词只取决于总预算，金额相同的并发请求共享同一次调用
+            Map<String, Double> shared = generationCoalescer.coalesceBudget(String.valueOf(total), () -> {
+                Map<String, Double> generated = requestBudgetFromAI(total, mode);
+                generationCache.putAllocations(cacheKey, totalBudget, generated);
+                return generated;
+            });
+            return new HashMap<>(shared);
+        } catch (Exception e) {
+            logger.error("调用阿里百炼API生成预算分配失败: {}", e.getMessage());
+            // 出错时回退到模拟数据生成
+            logger.info("回退到模拟预算分配");
+            return generateMockBudgetAllocations(totalBudget);
+        }
+    }
+
+    // 调用大模型生成预算分配，失败时抛出异常；mode 为本次调用所属的生成模式，为null时不计入调用统计
+    private Map<String, Double> requestBudgetFromAI(double total, String mode) {
+        // 构建提示词
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("请为一场总预算为")
+              .append(total)
+              .append("元的旅行生成预算分配方案。")
+              .append("\n\n请按以下JSON格式返回预算分配，确保返回内容是有效的JSON格式:")
+              .append("\n{")
+              .append("\n  \"住宿\": 1500,")
+              .append("\n  \"餐饮\": 1000,")
+              .append("\n  \"交通\": 750,")
+              .append("\n  \"门票\": 1000,")
+              .append("\n  \"购物\": 500,")
+              .append("\n  \"其他\": 250")
+              .append("\n}")
+              .append("\n\n请确保所有项的总和接近总预算，且返回的是纯JSON格式，不要包含其他文字说明。");
+        
+        // 调用阿里百炼API
+        LlmResult result = aliBaiLianService.generate(TokenAccountant.KIND_BUDGET, 0, prompt.toString());
+        String generatedContent = result.getText();
+        logger.info("阿里百炼API预算分配返回内容: {}", generatedContent);
+        
+        if (mode != null) {
+            generationStats.recordCall(mode, result);
+        }
+        
+        // 解析JSON响应
+        return TravelRouteBinder.readAllocations(generatedContent);
+    }
+
+    // 单次调用大模型同时生成路线与预算分配，路线和预算分别写入各自的缓存
+    private GeneratedItinerary generateItineraryWithAI(String tripId, TripCreateRequest request) {
+        int days = calculateDays(request);
+        Double totalBudget = request.getBudgetAmount();
+        GenerationCacheKey routesKey = GenerationCacheKey.forRoutes(request, days, generationCache.getBudgetBucketSize());
+        GenerationCacheKey budgetKey = GenerationCacheKey.forBudget(totalBudget, generationCache.getBudgetBucketSize());
+
+        Optional<List<TravelRoute>> cachedRoutes = generationCache.getRoutes(routesKey, tripId);
+        Optional<Map<String, Double>> cachedAllocations = generationCache.getAllocations(budgetKey, totalBudget);
+        if (cachedRoutes.isPresent() && cachedAllocations.isPresent()) {
+            logger.info("命中合并生成缓存，缓存键: {}", routesKey);
+            return new GeneratedItinerary(cachedRoutes.get(), cachedAllocations.get());
+        }
+
+        try {
+            double total = totalBudget != null ? totalBudget : 5000.0;
+            GeneratedItinerary shared = generationCoalescer.coalesceCombined(routesKey.getId() + "|" + total, () -> {
+                GeneratedItinerary generated = requestItineraryFromAI(request, days, total);
+                generationCache.putRoutes(routesKey, generated.getRoutes());
+                generationCache.putAllocations(budgetKey, totalBudget, generated.getAllocations());
+                return generated;
+            });
+            // 模型未返回预算分配时用模拟数据补上，模拟数据不写入缓存
+            Map<String, Double> allocations = shared.getAllocations() != null
+                    ? new HashMap<>(shared.getAllocations()) : generateMockBudgetAllocations(totalBudget);
+            return new GeneratedItinerary(GenerationCache.bindRoutes(shared.getRoutes(), tripId), allocations);
+        } catch (Exception e) {
+            logger.error("调用阿里百炼API合并生成失败: {}", e.getMessage());
+            logger.info("回退到模拟数据生成路线与预算分配");
+            return new GeneratedItinerary(generateMockRoutes(tripId, request), generateMockBudgetAllocations(totalBudget));
+        }
+    }
+
+    // 调用大模型生成合并结果（路线模板不含行程ID），路线解析失败时抛出异常；
+    // 预算缺失时 allocations 为null，由调用方回退，避免把模拟数据当作模型结果缓存
+    private GeneratedItinerary requestItineraryFromAI(TripCreateRequest request, int days, double total) {
+        String prompt = buildItineraryPrompt(request, days, total);
+        LlmResult result = aliBaiLianService.generate(TokenAccountant.KIND_COMBINED, days, prompt);
+        String generatedContent = result.getText();
+        logger.info("阿里百炼API合并生成返回内容: {}", generatedContent);
+        generationStats.recordCall(GenerationStats.MODE_COMBINED, result);
+
+        // 单遍读取，同时取出路线与预算
+        GeneratedItinerary itinerary = TravelRouteBinder.readItinerary(generatedContent, request.getDestination());
+        if (itinerary.getAllocations() == null) {
+            logger.warn("合并生成结果缺少预算分配，回退到模拟预算分配");
+        }
+        return itinerary;
+    }
+    
+    // 备用的模拟预算分配方法
+    private Map<String, Double> generateMockBudgetAllocations(Double totalBudget) {
+        Map<String, Double> allocations = new HashMap<>();
+        double total = totalBudget != null ? totalBudget : 5000.0;
+        
+        // 根据API文档要求的字段名生成分配信息，将Math.round结果转换为Double类型
+        allocations.put("住宿", (double)Math.round(total * 0.3 * 100) / 100);
+        allocations.put("餐饮", (double)Math.round(total * 0.2 * 100) / 100);
+        allocations.put("交通", (double)Math.round(total * 0.15 * 100) / 100);
+        allocations.put("门票", (double)Math.round(total * 0.2 * 100) / 100);
+        allocations.put("购物", (double)Math.round(total * 0.1 * 100) / 100);
+        allocations.put("其他", (double)Math.round(total * 0.05 * 100) / 100);
+        
+        return allocations;
+    }
+}
@@ -1,16 +1,32 @@
 package com.aitravelplanner.service.impl;
 
 import com.aitravelplanner.dto.TripCreateRequest;
+import com.aitravelplanner.dto.TripPage;
+import com.aitravelplanner.dto.TripSummary;
 import com.aitravelplanner.model.Trip;
 import com.aitravelplanner.repository.TripRepository;
+import com.aitravelplanner.service.BudgetService;
 import com.aitravelplanner.service.TripService;
 import com.aitravelplanner.service.TravelRouteService;
+import com.aitravelplanner.service.search.DestinationSearchTerms;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.regex.Pattern;
 
 @Service
 public class TripServiceImpl implements TripService {
@@ -21,6 +37,22 @@ public class TripServiceImpl implements TripService {
     @Autowired
     private TravelRouteService travelRouteService;
 
+    @Autowired
+    private BudgetService budgetService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${trip.list.max-page-size:100}")
+    private int maxListPageSize;
+
+    @Value("${trip.search.max-page-size:50}")
+    private int maxPageSize;
+
+    // 只允许翻到前N条结果，保证深翻页的耗时同样有上限
+    @Value("${trip.search.max-offset:500}")
+    private int maxOffset;
+
     @Override
     public Trip createTrip(Trip trip) {
         // 确保设置创建和更新时间
@@ -28,7 +60,9 @@ public class TripServiceImpl implements TripService {
             trip.setCreatedAt(new Date());
         }
         trip.setUpdatedAt(new Date());
-        return tripRepository.save(trip);
+        DestinationSearchTerms.apply(trip);
+        // 只插入新行程，不整体覆盖已有文档
+        return tripRepository.insert(trip);
     }
     
     @Override
@@ -38,8 +72,8 @@ public class TripServiceImpl implements TripService {
     }
 
     @Override
-    public List<Trip> getUserTrips(String userId) {
-        return tripRepository.findByUserId(userId);
+    public TripPage getUserTrips(String userId, String cursor, int size) {
+        return findPage(Criteria.where("userId").is(userId), cursor, size);
     }
 
     @Override
@@ -47,45 +81,152 @@ public class TripServiceImpl implements TripService {
         return tripRepository.findById(tripId);
     }
 
+    /**
+     * 只更新用户可编辑的字段，不读取也不写回整个行程文档，
+     * 预算及其汇总金额只由预算接口增量更新，不会被这里覆盖
+     */
     @Override
     public Trip updateTrip(String tripId, Trip trip) {
-        Trip existingTrip = tripRepository.findById(tripId)
-                .orElseThrow(() -> new RuntimeException("行程不存在"));
-
-        // 更新行程信息
-        existingTrip.setTitle(trip.getTitle());
-        existingTrip.setDestination(trip.getDestination());
-        existingTrip.setStartDate(trip.getStartDate());
-        existingTrip.setEndDate(trip.getEndDate());
-        existingTrip.setDescription(trip.getDescription());
-        existingTrip.setTags(trip.getTags());
-        existingTrip.setCoverImage(trip.getCoverImage());
-        // 更新新增字段
-        existingTrip.setBudgetAmount(trip.getBudgetAmount());
-        existingTrip.setPeopleCount(trip.getPeopleCount());
-        existingTrip.setTravelPreferences(trip.getTravelPreferences());
-        existingTrip.setUpdatedAt(new Date());
-
-        return tripRepository.save(existingTrip);
+        DestinationSearchTerms.apply(trip);
+        Update update = new Update()
+                .set("title", trip.getTitle())
+                .set("destination", trip.getDestination())
+                .set("startDate", trip.getStartDate())
+                .set("endDate", trip.getEndDate())
+                .set("description", trip.getDescription())
+                .set("tags", trip.getTags())
+                .set("coverImage", trip.getCoverImage())
+                .set("budgetAmount", trip.getBudgetAmount())
+                .set("peopleCount", trip.getPeopleCount())
+                .set("travelPreferences", trip.getTravelPreferences())
+                .set("destinationKey", trip.getDestinationKey())
+                .set("destinationTerms", trip.getDestinationTerms())
+                .set("updatedAt", new Date());
+
+        Trip updatedTrip = mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(tripId)), update,
+                FindAndModifyOptions.options().returnNew(true), Trip.class);
+        if (updatedTrip == null) {
+            throw new RuntimeException("行程不存在");
+        }
+        return updatedTrip;
     }
 
     @Override
     public void deleteTrip(String tripId) {
-        // 先删除相关的旅行路线
+        // 先删除相关的旅行路线与费用
         travelRouteService.deleteRoutesByTripId(tripId);
+        budgetService.deleteExpensesByTripId(tripId);
         // 再删除行程
         tripRepository.deleteById(tripId);
     }
 
     @Override
-    public List<Trip> getPublicTrips() {
+    public TripPage getPublicTrips(String cursor, int size) {
         // 返回所有行程（不再区分公开/私有）
-        return tripRepository.findAll();
+        return findPage(null, cursor, size);
     }
 
+    /**
+     * 按目的地搜索所有行程（不再区分公开/私有）：依次取完整匹配、前缀匹配、子串匹配三档结果，
+     * 每档内按创建时间倒序；各档互不重叠，都走 destinationTerms 索引并只读取当前页所需的条数
+     */
     @Override
-    public List<Trip> searchPublicTrips(String destination) {
-        // 搜索所有行程中的目的地，不再区分公开/私有
-        return tripRepository.findByDestinationContaining(destination);
+    public List<TripSummary> searchPublicTrips(String destination, int page, int size) {
+        String query = DestinationSearchTerms.normalizeQuery(destination);
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        long offset = (long) Math.max(0, page) * pageSize;
+        if (query.isEmpty() || offset >= maxOffset) {
+            return new ArrayList<>();
+        }
+        int needed = (int) offset + pageSize;
+        String exactTerm = DestinationSearchTerms.exactTerm(query);
+        String prefixTerm = DestinationSearchTerms.prefixTerm(query);
+
+        List<TripSummary> ranked = new ArrayList<>(findByDestinationTerms(
+                Criteria.where("destinationTerms").is(exactTerm), needed));
+        if (ranked.size() < needed && query.length() <= DestinationSearchTerms.MAX_PREFIX_LENGTH) {
+            ranked.addAll(findByDestinationTerms(
+                    Criteria.where("destinationTerms").all(prefixTerm).nin(exactTerm), needed - ranked.size()));
+        }
+        if (ranked.size() < needed) {
+            Criteria substring = Criteria.where("destinationTerms")
+                    .all(DestinationSearchTerms.gramTerms(query)).nin(exactTerm, prefixTerm);
+            if (query.length() > 2) {
+                // 二元n-gram全部命中不代表连续出现，再用规范化目的地确认
+                substring = substring.and("destinationKey").regex(Pattern.quote(query));
+            }
+            ranked.addAll(findByDestinationTerms(substring, needed - ranked.size()));
+        }
+        return offset >= ranked.size() ? new ArrayList<>() : ranked.subList((int) offset, ranked.size());
+    }
+
+    /**
+     * 按 (createdAt, _id) 倒序的游标分页：游标记录上一页最后一条的位置，下一页从其后继续读取，
+     * 由 {userId, createdAt, _id} / {createdAt, _id} 索引直接定位，耗时不随翻页深度增长
+     * @param filter 过滤条件，为null时不过滤；与游标条件各自作为一个条件加入查询
+     * @throws IllegalArgumentException 游标格式错误
+     */
+    private TripPage findPage(Criteria filter, String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, maxListPageSize));
+        Query query = new Query();
+        if (filter != null) {
+            query.addCriteria(filter);
+        }
+        if (cursor != null && !cursor.isBlank()) {
+            query.addCriteria(afterCursor(cursor));
+        }
+        query.with(Sort.by(Sort.Direction.DESC, "createdAt", "_id")).limit(pageSize + 1);
+
+        List<TripSummary> trips = findSummaries(query);
+        String nextCursor = null;
+        if (trips.size() > pageSize) {
+            trips = new ArrayList<>(trips.subList(0, pageSize));
+            nextCursor = encodeCursor(trips.get(pageSize - 1));
+        }
+        return new TripPage(trips, nextCursor);
+    }
+
+    // 游标为 Base64 编码的 "创建时间毫秒数|行程ID"，缺少创建时间的旧行程排在最后
+    private static String encodeCursor(TripSummary last) {
+        String createdAt = last.getCreatedAt() != null ? String.valueOf(last.getCreatedAt().getTime()) : "";
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + "|" + last.getId()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Criteria afterCursor(String cursor) {
+        String createdAt;
+        Object id;
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf('|');
+            createdAt = decoded.substring(0, separator);
+            String idValue = decoded.substring(separator + 1);
+            id = ObjectId.isValid(idValue) ? new ObjectId(idValue) : idValue;
+            if (!createdAt.isEmpty()) {
+                Long.parseLong(createdAt);
+            }
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+
+        if (createdAt.isEmpty()) {
+            return new Criteria().andOperator(Criteria.where("createdAt").is(null), Criteria.where("_id").lt(id));
+        }
+        Date position = new Date(Long.parseLong(createdAt));
+        return new Criteria().orOperator(
+                Criteria.where("createdAt").lt(position),
+                new Criteria().andOperator(Criteria.where("createdAt").is(position), Criteria.where("_id").lt(id)),
+                Criteria.where("createdAt").is(null));
+    }
+
+    private List<TripSummary> findByDestinationTerms(Criteria criteria, int limit) {
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.DESC, "createdAt")).limit(limit);
+        return findSummaries(query);
+    }
+
+    // 列表只读取摘要字段，不加载内嵌的预算与费用明细
+    private List<TripSummary> findSummaries(Query query) {
+        query.fields().include(TripSummary.FIELDS);
+        return mongoTemplate.find(query, TripSummary.class, mongoTemplate.getCollectionName(Trip.class));
     }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.aitravelplanner.service.search;
+
+import com.aitravelplanner.model.Trip;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 为新增检索字段之前创建的行程补写 destinationKey / destinationTerms，
+ * 启动后分批执行，每批一次批量更新；已补写的行程不会被再次读取
+ */
+@Component
+public class DestinationSearchBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(DestinationSearchBackfill.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${trip.search.backfill-batch-size:500}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        long updated = 0;
+        try {
+            while (true) {
+                Query query = new Query(Criteria.where("destinationTerms").exists(false)).limit(batchSize);
+                query.fields().include("destination");
+                List<Trip> trips = mongoTemplate.find(query, Trip.class);
+                if (trips.isEmpty()) {
+                    break;
+                }
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Trip.class);
+                for (Trip trip : trips) {
+                    DestinationSearchTerms.apply(trip);
+                    bulk.updateOne(new Query(Criteria.where("_id").is(trip.getId())), new Update()
+                            .set("destinationKey", trip.getDestinationKey())
+                            .set("destinationTerms", trip.getDestinationTerms()));
+                }
+                bulk.execute();
+                updated += trips.size();
+            }
+            if (updated > 0) {
+                logger.info("已为 {} 个行程补写目的地检索字段", updated);
+            }
+        } catch (Exception e) {
+            logger.error("补写目的地检索字段失败，已完成 {} 个: {}", updated, e.getMessage());
+        }
+    }
+}
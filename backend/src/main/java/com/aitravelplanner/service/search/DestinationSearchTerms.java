@@ -0,0 +1,86 @@
+package com.aitravelplanner.service.search;
+
+import com.aitravelplanner.model.Trip;
+import com.aitravelplanner.service.generation.GenerationCacheKey;
+import com.aitravelplanner.service.generation.GenerationSimilarityIndex;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 目的地检索词：把目的地拆成可用多键索引等值匹配的词，前缀与中文子串查询都不需要正则扫描。
+ * "=杭州" 为完整匹配（去掉"市/省"等后缀），"^杭"、"^杭州" 为前缀，"~杭"、"~杭州" 为单字与二元n-gram。
+ */
+public final class DestinationSearchTerms {
+
+    private static final String EXACT = "=";
+    private static final String PREFIX = "^";
+    private static final String GRAM = "~";
+    // 只为前若干个字生成前缀词，更长的查询按n-gram匹配
+    public static final int MAX_PREFIX_LENGTH = 20;
+
+    private DestinationSearchTerms() {
+    }
+
+    /**
+     * 根据目的地设置行程的检索字段
+     */
+    public static void apply(Trip trip) {
+        trip.setDestinationKey(normalize(trip.getDestination()));
+        trip.setDestinationTerms(terms(trip.getDestination()));
+    }
+
+    public static String normalize(String destination) {
+        return GenerationCacheKey.normalize(destination);
+    }
+
+    /**
+     * 查询词的规范形式：与目的地一样去掉行政区划后缀，"杭州市"与"杭州"查询结果相同
+     */
+    public static String normalizeQuery(String query) {
+        return GenerationSimilarityIndex.canonicalDestination(query);
+    }
+
+    public static List<String> terms(String destination) {
+        String key = normalize(destination);
+        Set<String> terms = new LinkedHashSet<>();
+        if (key.isEmpty()) {
+            return new ArrayList<>(terms);
+        }
+        terms.add(exactTerm(GenerationSimilarityIndex.canonicalDestination(key)));
+        for (int length = 1; length <= Math.min(key.length(), MAX_PREFIX_LENGTH); length++) {
+            terms.add(PREFIX + key.substring(0, length));
+        }
+        for (int i = 0; i < key.length(); i++) {
+            terms.add(GRAM + key.charAt(i));
+            if (i + 1 < key.length()) {
+                terms.add(GRAM + key.substring(i, i + 2));
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+
+    public static String exactTerm(String query) {
+        return EXACT + query;
+    }
+
+    public static String prefixTerm(String query) {
+        return PREFIX + query;
+    }
+
+    /**
+     * 子串查询需要全部命中的n-gram：单字查询用单字，否则用相邻两字
+     */
+    public static List<String> gramTerms(String query) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (query.length() == 1) {
+            grams.add(GRAM + query);
+        }
+        for (int i = 0; i + 2 <= query.length(); i++) {
+            grams.add(GRAM + query.substring(i, i + 2));
+        }
+        return new ArrayList<>(grams);
+    }
+}
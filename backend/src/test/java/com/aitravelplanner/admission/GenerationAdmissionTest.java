@@ -0,0 +1,147 @@
+package com.aitravelplanner.admission;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationAdmissionTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private GenerationAdmission admission;
+
+    @BeforeEach
+    void setUp() {
+        admission = newAdmission(1, 2, 5000, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void userOverBurstIsRejectedWithRetryAfter() {
+        admission = newAdmission(16, 32, 5000, 2);
+
+        admission.acquire("user-1", RequestPriority.INTERACTIVE).close();
+        admission.acquire("user-1", RequestPriority.INTERACTIVE).close();
+        AdmissionRejectedException e = assertThrows(AdmissionRejectedException.class,
+                () -> admission.acquire("user-1", RequestPriority.INTERACTIVE));
+
+        assertTrue(e.getRetryAfterSeconds() >= 1);
+        assertEquals(1L, admission.getStats().get("rejectedRate"));
+        // 其他用户不受影响
+        admission.acquire("user-2", RequestPriority.INTERACTIVE).close();
+    }
+
+    @Test
+    void interactiveWaiterIsAdmittedBeforeEarlierBulkWaiter() throws Exception {
+        GenerationAdmission.Permit running = admission.acquire("user-1", RequestPriority.INTERACTIVE);
+        List<RequestPriority> admittedOrder = new CopyOnWriteArrayList<>();
+
+        Future<?> bulk = executor.submit(() -> admitAndRecord(RequestPriority.BULK, admittedOrder));
+        waitUntil(() -> queueLength() == 1);
+        Future<?> interactive = executor.submit(() -> admitAndRecord(RequestPriority.INTERACTIVE, admittedOrder));
+        waitUntil(() -> queueLength() == 2);
+
+        running.close();
+        bulk.get(5, TimeUnit.SECONDS);
+        interactive.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(RequestPriority.INTERACTIVE, RequestPriority.BULK), admittedOrder);
+        assertEquals(0, admission.getStats().get("inFlight"));
+    }
+
+    @Test
+    void fullQueueRejectsSamePriorityAndDisplacesLowerPriority() throws Exception {
+        admission = newAdmission(1, 1, 5000, 100);
+        GenerationAdmission.Permit running = admission.acquire("user-1", RequestPriority.INTERACTIVE);
+        Future<GenerationAdmission.Permit> bulk = executor.submit(() -> admission.acquire("user-2", RequestPriority.BULK));
+        waitUntil(() -> queueLength() == 1);
+
+        assertThrows(AdmissionRejectedException.class, () -> admission.acquire("user-3", RequestPriority.BULK));
+
+        Future<GenerationAdmission.Permit> interactive =
+                executor.submit(() -> admission.acquire("user-4", RequestPriority.INTERACTIVE));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> bulk.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(AdmissionRejectedException.class, e.getCause());
+
+        running.close();
+        interactive.get(5, TimeUnit.SECONDS).close();
+        assertEquals(1L, admission.getStats().get("rejectedQueueFull"));
+        assertEquals(1L, admission.getStats().get("displaced"));
+    }
+
+    @Test
+    void waiterTimesOutWhenNoPermitIsReleased() {
+        admission = newAdmission(1, 2, 50, 100);
+        GenerationAdmission.Permit running = admission.acquire("user-1", RequestPriority.INTERACTIVE);
+
+        assertThrows(AdmissionRejectedException.class, () -> admission.acquire("user-2", RequestPriority.INTERACTIVE));
+
+        assertEquals(1L, admission.getStats().get("rejectedTimeout"));
+        assertEquals(0, queueLength());
+        running.close();
+        assertEquals(0, admission.getStats().get("inFlight"));
+    }
+
+    @Test
+    void closingPermitTwiceReleasesOnce() {
+        admission = newAdmission(2, 2, 5000, 100);
+        GenerationAdmission.Permit first = admission.acquire("user-1", RequestPriority.INTERACTIVE);
+        GenerationAdmission.Permit second = admission.acquire("user-2", RequestPriority.INTERACTIVE);
+
+        first.close();
+        first.close();
+
+        assertEquals(1, admission.getStats().get("inFlight"));
+        second.close();
+        assertEquals(0, admission.getStats().get("inFlight"));
+    }
+
+    private Void admitAndRecord(RequestPriority priority, List<RequestPriority> admittedOrder) {
+        try (GenerationAdmission.Permit ignored = admission.acquire("user-" + priority, priority)) {
+            admittedOrder.add(priority);
+        }
+        return null;
+    }
+
+    private int queueLength() {
+        return (int) admission.getStats().get("queueLength");
+    }
+
+    private static GenerationAdmission newAdmission(int maxConcurrent, int queueCapacity, long queueTimeoutMillis, int userBurst) {
+        GenerationAdmission admission = new GenerationAdmission();
+        ReflectionTestUtils.setField(admission, "enabled", true);
+        ReflectionTestUtils.setField(admission, "maxConcurrent", maxConcurrent);
+        ReflectionTestUtils.setField(admission, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(admission, "queueTimeoutMillis", queueTimeoutMillis);
+        ReflectionTestUtils.setField(admission, "userBurst", userBurst);
+        ReflectionTestUtils.setField(admission, "userRefillPerMinute", 6.0);
+        ReflectionTestUtils.setField(admission, "idleBucketSeconds", 600L);
+        return admission;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+}
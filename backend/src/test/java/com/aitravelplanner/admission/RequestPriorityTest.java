@@ -0,0 +1,21 @@
+package com.aitravelplanner.admission;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestPriorityTest {
+
+    @Test
+    void withoutOwnSessionIsAlwaysBulk() {
+        assertEquals(RequestPriority.BULK, RequestPriority.resolve(false, null));
+        assertEquals(RequestPriority.BULK, RequestPriority.resolve(false, "interactive"));
+    }
+
+    @Test
+    void ownSessionIsInteractiveUnlessHeaderDemotes() {
+        assertEquals(RequestPriority.INTERACTIVE, RequestPriority.resolve(true, null));
+        assertEquals(RequestPriority.INTERACTIVE, RequestPriority.resolve(true, "interactive"));
+        assertEquals(RequestPriority.BULK, RequestPriority.resolve(true, " Bulk "));
+    }
+}
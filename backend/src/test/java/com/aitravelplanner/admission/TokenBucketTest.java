@@ -0,0 +1,54 @@
+package com.aitravelplanner.admission;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void burstUpToCapacityThenReportsWaitForNextToken() {
+        // 每分钟补充6个，即每10秒一个
+        TokenBucket bucket = new TokenBucket(2, 6);
+
+        assertEquals(0, bucket.tryConsume());
+        assertEquals(0, bucket.tryConsume());
+        long waitMillis = bucket.tryConsume();
+
+        assertTrue(waitMillis > 9000 && waitMillis <= 10000, "等待时间: " + waitMillis);
+    }
+
+    @Test
+    void tokensRefillOverTime() throws InterruptedException {
+        // 每毫秒补充1个
+        TokenBucket bucket = new TokenBucket(1, 60000);
+        assertEquals(0, bucket.tryConsume());
+
+        Thread.sleep(20);
+
+        assertEquals(0, bucket.tryConsume());
+    }
+
+    @Test
+    void refillNeverExceedsCapacity() throws InterruptedException {
+        // 每50毫秒补充1个，闲置期间补充的令牌不超过容量
+        TokenBucket bucket = new TokenBucket(2, 1200);
+        Thread.sleep(200);
+
+        assertEquals(0, bucket.tryConsume());
+        assertEquals(0, bucket.tryConsume());
+        assertTrue(bucket.tryConsume() > 0);
+    }
+
+    @Test
+    void onlyFullUnusedBucketIsIdle() {
+        TokenBucket bucket = new TokenBucket(2, 6);
+        assertTrue(bucket.isIdle(0));
+
+        bucket.tryConsume();
+
+        assertFalse(bucket.isIdle(0));
+    }
+}
@@ -0,0 +1,58 @@
+package com.aitravelplanner.llm;
+
+import com.aitravelplanner.service.generation.SegmentOutline;
+import com.aitravelplanner.service.generation.TravelRouteBinder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReplayResponderTest {
+
+    private static final String OUTLINE_PROMPT = "请为我规划一段在杭州的8天旅行行程。"
+            + "\n\n行程较长，将分2段分别规划：第1-4天、第5-8天。请先按城市的不同区域为每段确定游览区域。"
+            + "\n{\n  \"segments\": [\n    {\"area\": \"区域名称\", \"attractions\": [\"景点1\", \"景点2\"]}\n  ]\n}";
+    private static final String ROUTES_PROMPT = "请为我规划一段在杭州的3天旅行行程。\n{\n  \"routes\": []\n}";
+    private static final String BUDGET_PROMPT = "总预算为3000元，请给出预算分配。";
+
+    private ReplayResponder responder;
+
+    @BeforeEach
+    void setUp() {
+        responder = new ReplayResponder();
+        ReflectionTestUtils.setField(responder, "latencyDistribution", "fixed");
+        ReflectionTestUtils.setField(responder, "medianMillis", 0L);
+        ReflectionTestUtils.setField(responder, "minMillis", 0L);
+        ReflectionTestUtils.setField(responder, "maxMillis", 0L);
+        ReflectionTestUtils.setField(responder, "tokensPerDay", 40);
+        ReflectionTestUtils.setField(responder, "streamChunkChars", 40);
+    }
+
+    @Test
+    void classifiesPromptsByRequestedFormat() {
+        assertEquals(ReplayResponder.KIND_OUTLINE, ReplayResponder.classify(OUTLINE_PROMPT));
+        assertEquals(ReplayResponder.KIND_ROUTES, ReplayResponder.classify(ROUTES_PROMPT));
+        assertEquals(ReplayResponder.KIND_BUDGET, ReplayResponder.classify(BUDGET_PROMPT));
+        assertEquals(ReplayResponder.KIND_COMBINED, ReplayResponder.classify(ROUTES_PROMPT + BUDGET_PROMPT));
+    }
+
+    @Test
+    void synthesizedOutlineHasOneSegmentPerRange() {
+        String text = responder.respond(OUTLINE_PROMPT, 0).getText();
+
+        List<SegmentOutline> outline = TravelRouteBinder.readOutline(text);
+        assertEquals(2, outline.size());
+        assertEquals(8, outline.get(0).getAttractions().size());
+        assertEquals("景点5A", outline.get(1).getAttractions().get(0));
+    }
+
+    @Test
+    void synthesizedRoutesCoverRequestedDays() {
+        String text = responder.respond(ROUTES_PROMPT, 0).getText();
+
+        assertEquals(3, TravelRouteBinder.readRoutes(text, "杭州").size());
+    }
+}
@@ -0,0 +1,172 @@
+package com.aitravelplanner.service.budget;
+
+import com.aitravelplanner.model.Budget;
+import com.aitravelplanner.model.ExpenseBucket;
+import com.aitravelplanner.model.Trip;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BudgetReconcilerTest {
+
+    private static final String TRIP_ID = "65a000000000000000000001";
+
+    private MongoTemplate mongoTemplate;
+    private BudgetReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        reconciler = new BudgetReconciler();
+        ReflectionTestUtils.setField(reconciler, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(reconciler, "enabled", true);
+        ReflectionTestUtils.setField(reconciler, "batchSize", 200);
+        ReflectionTestUtils.setField(reconciler, "tolerance", 0.01);
+        ReflectionTestUtils.setField(reconciler, "pendingTimeoutMillis", 600000L);
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Trip.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+    }
+
+    @Test
+    void driftedTotalsAreRepairedFromExpenseDetails() {
+        givenTrip(budget(1000, 100, 0, 3L, null));
+        givenExpenses(row(TRIP_ID, "餐饮", "2026-10-01", 50), row(TRIP_ID, "交通", "2026-10-01", 30));
+
+        assertTrue(reconciler.repair(TRIP_ID));
+
+        ArgumentCaptor<Query> filter = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(filter.capture(), update.capture(), eq(Trip.class));
+        // 只在读取之后没有新的费用写入时覆盖
+        assertEquals(3L, filter.getValue().getQueryObject().get(BudgetTotals.WRITE_VERSION));
+        assertEquals(0, filter.getValue().getQueryObject().get(BudgetTotals.PENDING_WRITES));
+        Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+        assertEquals(80.0, set.getDouble("budget.spentAmount"), 1e-9);
+        assertEquals(920.0, set.getDouble("budget.remainingAmount"), 1e-9);
+        assertEquals(Map.of("餐饮", 50.0, "交通", 30.0), set.get("budget.spentByCategory"));
+        assertEquals(Map.of("2026-10-01", 80.0), set.get("budget.spentByDay"));
+        assertEquals(1L, reconciler.getStats().get("tripsRepaired"));
+    }
+
+    @Test
+    void matchingTotalsAreLeftUntouched() {
+        Budget budget = budget(1000, 80, 0, 3L, null);
+        budget.setSpentByCategory(Map.of("餐饮", 80.0));
+        budget.setSpentByDay(Map.of("2026-10-01", 80.0));
+        givenTrip(budget);
+        givenExpenses(row(TRIP_ID, "餐饮", "2026-10-01", 80));
+
+        assertFalse(reconciler.repair(TRIP_ID));
+
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Trip.class));
+    }
+
+    @Test
+    void tripWithWriteInProgressIsSkipped() {
+        givenTrip(budget(1000, 100, 1, 3L, new Date()));
+
+        assertFalse(reconciler.repair(TRIP_ID));
+
+        verify(mongoTemplate, never()).aggregate(any(Aggregation.class), eq(ExpenseBucket.class), eq(Document.class));
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Trip.class));
+        assertEquals(1L, reconciler.getStats().get("skippedInFlight"));
+    }
+
+    @Test
+    void staleWriteMarkerIsRepairedAndCleared() {
+        // 写入标记超过 pending-timeout-millis 未清除，视为写入已中断
+        givenTrip(budget(1000, 100, 1, 3L, new Date(System.currentTimeMillis() - 700000)));
+        givenExpenses(row(TRIP_ID, "餐饮", "2026-10-01", 80));
+
+        assertTrue(reconciler.repair(TRIP_ID));
+
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(Trip.class));
+        assertEquals(0, update.getValue().getUpdateObject().get("$set", Document.class).get(BudgetTotals.PENDING_WRITES));
+    }
+
+    @Test
+    void concurrentWriteAfterReadWinsOverRepair() {
+        givenTrip(budget(1000, 100, 0, 3L, null));
+        givenExpenses(row(TRIP_ID, "餐饮", "2026-10-01", 80));
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Trip.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        assertFalse(reconciler.repair(TRIP_ID));
+
+        assertEquals(1L, reconciler.getStats().get("repairsSkipped"));
+        assertEquals(0L, reconciler.getStats().get("tripsRepaired"));
+    }
+
+    @Test
+    void reconcileAllPagesByObjectId() {
+        Trip trip = trip(budget(1000, 0, 0, 1L, null));
+        when(mongoTemplate.find(any(Query.class), eq(Trip.class))).thenReturn(List.of(trip), List.of());
+        givenExpenses();
+
+        assertEquals(0, reconciler.reconcileAll());
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(queries.capture(), eq(Trip.class));
+        // 下一页从上一页最后一个行程之后开始，按 ObjectId 比较
+        Document idFilter = queries.getAllValues().get(1).getQueryObject().get("_id", Document.class);
+        assertEquals(new ObjectId(TRIP_ID), idFilter.get("$gt"));
+        assertEquals(1L, reconciler.getStats().get("tripsChecked"));
+    }
+
+    private void givenTrip(Budget budget) {
+        when(mongoTemplate.findOne(any(Query.class), eq(Trip.class))).thenReturn(trip(budget));
+    }
+
+    private void givenExpenses(Document... rows) {
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(ExpenseBucket.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(rows), new Document()));
+    }
+
+    private static Trip trip(Budget budget) {
+        Trip trip = new Trip();
+        trip.setId(TRIP_ID);
+        trip.setBudget(budget);
+        return trip;
+    }
+
+    private static Budget budget(double total, double spent, int pendingWrites, Long version, Date writeAt) {
+        Budget budget = new Budget();
+        budget.setTotalBudget(total);
+        budget.setSpentAmount(spent);
+        budget.setRemainingAmount(total - spent);
+        budget.setPendingExpenseWrites(pendingWrites);
+        budget.setExpenseVersion(version);
+        budget.setExpenseWriteAt(writeAt);
+        return budget;
+    }
+
+    private static Document row(String tripId, String category, String day, double amount) {
+        return new Document("_id", new Document("tripId", tripId).append("category", category).append("day", day))
+                .append("amount", amount);
+    }
+}
@@ -0,0 +1,214 @@
+package com.aitravelplanner.service.budget;
+
+import com.aitravelplanner.model.Expense;
+import com.aitravelplanner.model.ExpenseBucket;
+import com.aitravelplanner.model.Trip;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExpenseWriteCombinerTest {
+
+    private static final String TRIP_ID = "trip-1";
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private MongoTemplate mongoTemplate;
+    private ExpenseWriteCombiner combiner;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Trip.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(mongoTemplate.upsert(any(Query.class), any(UpdateDefinition.class), eq(ExpenseBucket.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        combiner = newCombiner(true, 200, 50);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void fullBatchIsWrittenWithoutWaitingForWindow() throws Exception {
+        // 窗口很长，4条费用凑满一批后立即写入
+        combiner = newCombiner(true, 60000, 4);
+
+        writeConcurrently(TRIP_ID, 4);
+
+        ArgumentCaptor<UpdateDefinition> bucketUpdate = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(1)).upsert(any(Query.class), bucketUpdate.capture(), eq(ExpenseBucket.class));
+        assertEquals(4, pushedCount(bucketUpdate.getValue()));
+        assertEquals(4, incrementOf(bucketUpdate.getValue(), "count").intValue());
+        assertEquals(1L, combiner.getStats().get("flushes"));
+        assertEquals(4, combiner.getStats().get("largestBatch"));
+    }
+
+    @Test
+    void writesWithinWindowAreCombinedIntoOneFlush() throws Exception {
+        writeConcurrently(TRIP_ID, 3);
+
+        verify(mongoTemplate, times(1)).upsert(any(Query.class), any(UpdateDefinition.class), eq(ExpenseBucket.class));
+        ArgumentCaptor<UpdateDefinition> tripUpdates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), tripUpdates.capture(), eq(Trip.class));
+        // 第一次更新累加整批金额并标记写入开始，第二次清除写入标记
+        UpdateDefinition begin = tripUpdates.getAllValues().get(0);
+        assertEquals(30.0, incrementOf(begin, "budget.spentAmount").doubleValue(), 1e-9);
+        assertEquals(30.0, incrementOf(begin, "budget.spentByCategory.餐饮").doubleValue(), 1e-9);
+        assertEquals(1, incrementOf(begin, BudgetTotals.PENDING_WRITES).intValue());
+        assertEquals(-1, incrementOf(tripUpdates.getAllValues().get(1), BudgetTotals.PENDING_WRITES).intValue());
+    }
+
+    @Test
+    void batchesNeverExceedMaxBatch() throws Exception {
+        combiner = newCombiner(true, 60000, 2);
+
+        writeConcurrently(TRIP_ID, 6);
+
+        ArgumentCaptor<UpdateDefinition> bucketUpdates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(3)).upsert(any(Query.class), bucketUpdates.capture(), eq(ExpenseBucket.class));
+        for (UpdateDefinition update : bucketUpdates.getAllValues()) {
+            assertEquals(2, pushedCount(update));
+        }
+    }
+
+    @Test
+    void missingTripFailsWithoutTouchingBuckets() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Trip.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> combiner.write(TRIP_ID, expense(10)));
+
+        assertEquals("行程不存在", e.getMessage());
+        verify(mongoTemplate, never()).upsert(any(Query.class), any(UpdateDefinition.class), eq(ExpenseBucket.class));
+    }
+
+    @Test
+    void failedBucketWriteRefundsWholeBatchAndFailsEveryWriter() throws Exception {
+        IllegalStateException failure = new IllegalStateException("写入失败");
+        when(mongoTemplate.upsert(any(Query.class), any(UpdateDefinition.class), eq(ExpenseBucket.class))).thenThrow(failure);
+        combiner = newCombiner(true, 60000, 3);
+
+        List<Future<?>> writes = submitWrites(TRIP_ID, 3);
+        for (Future<?> write : writes) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> write.get(5, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+
+        ArgumentCaptor<UpdateDefinition> tripUpdates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), tripUpdates.capture(), eq(Trip.class));
+        UpdateDefinition refund = tripUpdates.getAllValues().get(1);
+        assertEquals(-30.0, incrementOf(refund, "budget.spentAmount").doubleValue(), 1e-9);
+        assertEquals(30.0, incrementOf(refund, "budget.remainingAmount").doubleValue(), 1e-9);
+        assertEquals(-1, incrementOf(refund, BudgetTotals.PENDING_WRITES).intValue());
+        assertEquals(1L, combiner.getStats().get("failedFlushes"));
+    }
+
+    @Test
+    void errorDuringFlushFailsEveryWriterInsteadOfHanging() throws Exception {
+        when(mongoTemplate.upsert(any(Query.class), any(UpdateDefinition.class), eq(ExpenseBucket.class)))
+                .thenThrow(new OutOfMemoryError("模拟内存不足"));
+        combiner = newCombiner(true, 60000, 3);
+
+        for (Future<?> write : submitWrites(TRIP_ID, 3)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> write.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(OutOfMemoryError.class, e.getCause());
+        }
+    }
+
+    @Test
+    void disabledCombinerWritesEachExpenseSeparately() {
+        combiner = newCombiner(false, 1000, 50);
+
+        combiner.write(TRIP_ID, expense(10));
+        combiner.write(TRIP_ID, expense(10));
+
+        verify(mongoTemplate, times(2)).upsert(any(Query.class), any(UpdateDefinition.class), eq(ExpenseBucket.class));
+    }
+
+    private ExpenseWriteCombiner newCombiner(boolean enabled, long windowMillis, int maxBatch) {
+        ExpenseWriteCombiner combiner = new ExpenseWriteCombiner();
+        ReflectionTestUtils.setField(combiner, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(combiner, "bucketSize", 50);
+        ReflectionTestUtils.setField(combiner, "enabled", enabled);
+        ReflectionTestUtils.setField(combiner, "windowMillis", windowMillis);
+        ReflectionTestUtils.setField(combiner, "maxBatch", maxBatch);
+        ReflectionTestUtils.setField(combiner, "stripeCount", 4);
+        combiner.init();
+        return combiner;
+    }
+
+    private void writeConcurrently(String tripId, int count) throws Exception {
+        for (Future<?> write : submitWrites(tripId, count)) {
+            write.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private List<Future<?>> submitWrites(String tripId, int count) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            writes.add(executor.submit(() -> {
+                start.await();
+                combiner.write(tripId, expense(10));
+                return null;
+            }));
+        }
+        start.countDown();
+        return writes;
+    }
+
+    private static Expense expense(double amount) {
+        Expense expense = new Expense();
+        expense.setName("午餐");
+        expense.setAmount(amount);
+        expense.setCategory("餐饮");
+        expense.setDate(new Date());
+        return expense;
+    }
+
+    private static int pushedCount(UpdateDefinition update) {
+        Update.Modifiers modifiers = (Update.Modifiers) update.getUpdateObject().get("$push", Document.class).get("expenses");
+        for (Update.Modifier modifier : modifiers.getModifiers()) {
+            if ("$each".equals(modifier.getKey())) {
+                return ((Object[]) modifier.getValue()).length;
+            }
+        }
+        return 0;
+    }
+
+    private static Number incrementOf(UpdateDefinition update, String field) {
+        return update.getUpdateObject().get("$inc", Document.class).get(field, Number.class);
+    }
+}
@@ -0,0 +1,70 @@
+package com.aitravelplanner.service.generation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoutesStreamParserTest {
+
+    private static final String DAY_1 = "{\"day\": 1, \"attractions\": [\"西湖\", \"雷峰塔\"], \"estimatedCost\": 300}";
+    private static final String DAY_2 = "{\"day\": 2, \"description\": \"含 } 与 ] 以及 \\\"引号\\\" 的描述\", "
+            + "\"attractionDetails\": [{\"name\": \"灵隐寺\", \"latitude\": 30.24}]}";
+    private static final String RESPONSE = "```json\n{\"routes\": [" + DAY_1 + ",\n  " + DAY_2 + "\n], \"budget\": {\"住宿\": 800}}\n```";
+
+    @Test
+    void emitsEachDayAsSoonAsItCloses() {
+        RoutesStreamParser parser = new RoutesStreamParser();
+        int day2Start = RESPONSE.indexOf(DAY_2);
+
+        List<String> beforeDay2 = parser.feed(RESPONSE.substring(0, day2Start));
+        List<String> rest = parser.feed(RESPONSE.substring(day2Start));
+
+        assertEquals(List.of(DAY_1), beforeDay2);
+        assertEquals(List.of(DAY_2), rest);
+        assertTrue(parser.isFinished());
+    }
+
+    @Test
+    void resultIsIndependentOfChunkBoundaries() {
+        for (int chunkSize = 1; chunkSize <= 16; chunkSize++) {
+            RoutesStreamParser parser = new RoutesStreamParser();
+            List<String> days = new ArrayList<>();
+            for (int i = 0; i < RESPONSE.length(); i += chunkSize) {
+                days.addAll(parser.feed(RESPONSE.substring(i, Math.min(RESPONSE.length(), i + chunkSize))));
+            }
+            assertEquals(List.of(DAY_1, DAY_2), days, "分段长度: " + chunkSize);
+        }
+    }
+
+    @Test
+    void bracketsInsideStringsDoNotCloseTheDay() {
+        RoutesStreamParser parser = new RoutesStreamParser();
+
+        List<String> days = parser.feed("{\"routes\": [" + DAY_2.substring(0, DAY_2.indexOf("的描述")));
+
+        assertTrue(days.isEmpty());
+        assertFalse(parser.isFinished());
+    }
+
+    @Test
+    void ignoresContentAfterRoutesArray() {
+        RoutesStreamParser parser = new RoutesStreamParser();
+        parser.feed("{\"routes\": [" + DAY_1 + "]");
+
+        assertTrue(parser.isFinished());
+        assertTrue(parser.feed(", \"extra\": [" + DAY_1 + "]}").isEmpty());
+    }
+
+    @Test
+    void waitsForRoutesKeyBeforeParsing() {
+        RoutesStreamParser parser = new RoutesStreamParser();
+
+        assertTrue(parser.feed("{\"summary\": {\"day\": 0}, \"rou").isEmpty());
+        assertEquals(List.of(DAY_1), parser.feed("tes\": [" + DAY_1));
+    }
+}
@@ -0,0 +1,149 @@
+package com.aitravelplanner.service.generation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallsWithSameKeyShareOneExecution() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = submitAll(() -> singleFlight.execute("杭州|3", () -> {
+            executions.incrementAndGet();
+            await(release);
+            return "routes";
+        }));
+        // 等其余调用方都已在等待第一个调用的结果，再让第一个调用返回
+        waitUntil(() -> (long) singleFlight.snapshot().get("shared") == CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("routes", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertEquals(0, singleFlight.snapshot().get("inFlight"));
+    }
+
+    @Test
+    void failureIsSharedWithWaitingCallers() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = submitAll(() -> singleFlight.execute("杭州|3", () -> {
+            await(release);
+            throw new IllegalStateException("AI生成失败");
+        }));
+        waitUntil(() -> (long) singleFlight.snapshot().get("shared") == CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        }
+    }
+
+    @Test
+    void errorFromLeaderIsSharedWithWaitingCallers() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = submitAll(() -> singleFlight.execute("杭州|3", () -> {
+            await(release);
+            throw new StackOverflowError();
+        }));
+        waitUntil(() -> (long) singleFlight.snapshot().get("shared") == CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(StackOverflowError.class, e.getCause());
+        }
+        assertEquals(0, singleFlight.snapshot().get("inFlight"));
+    }
+
+    @Test
+    void completedCallIsNotReused() {
+        SingleFlight<Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+
+        singleFlight.execute("杭州|3", executions::incrementAndGet);
+        singleFlight.execute("杭州|3", executions::incrementAndGet);
+
+        assertEquals(2, executions.get());
+        assertEquals(0L, singleFlight.snapshot().get("shared"));
+    }
+
+    @Test
+    void differentKeysRunIndependently() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        Future<String> first = executor.submit(() -> singleFlight.execute("杭州|3", () -> {
+            bothStarted.countDown();
+            await(bothStarted);
+            return "杭州";
+        }));
+        Future<String> second = executor.submit(() -> singleFlight.execute("成都|3", () -> {
+            bothStarted.countDown();
+            await(bothStarted);
+            return "成都";
+        }));
+
+        assertEquals("杭州", first.get(5, TimeUnit.SECONDS));
+        assertEquals("成都", second.get(5, TimeUnit.SECONDS));
+    }
+
+    private List<Future<String>> submitAll(Callable<String> call) {
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(call));
+        }
+        return results;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+}
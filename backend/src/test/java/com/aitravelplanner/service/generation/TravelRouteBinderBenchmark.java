@@ -0,0 +1,129 @@
+package com.aitravelplanner.service.generation;
+
+import com.aitravelplanner.model.TravelRoute;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 路线解析的分配量与CPU时间对比：原先的 JSONObject 树 + toJavaList 转换，与 TravelRouteBinder 单遍读取。
+ * 不在常规测试中运行，需要时单独执行：
+ * mvn test -Dtest=TravelRouteBinderBenchmark [-Dbenchmark.days=7 -Dbenchmark.iterations=20000]
+ */
+class TravelRouteBinderBenchmark {
+
+    private static final int DAYS = Integer.getInteger("benchmark.days", 7);
+    private static final int WARMUP_ITERATIONS = Integer.getInteger("benchmark.warmup", 20000);
+    private static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 20000);
+
+    @Test
+    void binderAllocatesLessThanJsonObjectTree() {
+        String json = response(DAYS);
+        assertEquals(readWithJsonObjectTree(json).size(), TravelRouteBinder.readRoutes(json, "杭州").size());
+
+        Result tree = measure("JSONObject树", () -> readWithJsonObjectTree(json));
+        Result binder = measure("TravelRouteBinder", () -> TravelRouteBinder.readRoutes(json, "杭州"));
+
+        System.out.printf("%d天行程，响应 %d 字符，%d 次%n", DAYS, json.length(), ITERATIONS);
+        System.out.println(tree);
+        System.out.println(binder);
+        assertTrue(binder.bytesPerParse < tree.bytesPerParse);
+    }
+
+    private static Result measure(String name, Supplier<List<TravelRoute>> parse) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int sink = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += parse.get().size();
+        }
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long cpuBefore = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += parse.get().size();
+        }
+        long cpu = threads.getCurrentThreadCpuTime() - cpuBefore;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        assertTrue(sink > 0);
+        return new Result(name, bytes / ITERATIONS, cpu / 1000.0 / ITERATIONS);
+    }
+
+    // 模拟大模型按提示词格式返回的路线
+    private static String response(int days) {
+        StringBuilder json = new StringBuilder("{\"routes\": [");
+        for (int day = 1; day <= days; day++) {
+            json.append(day == 1 ? "" : ",").append("{\"day\": ").append(day)
+                    .append(", \"description\": \"第").append(day).append("天：上午游览湖区与古寺，下午漫步历史街区，晚上品尝本地小吃\"")
+                    .append(", \"transportation\": \"地铁+步行\", \"attractions\": [");
+            for (int i = 1; i <= 4; i++) {
+                json.append(i == 1 ? "" : ",").append("\"景点").append(day).append('-').append(i).append('"');
+            }
+            json.append("], \"attractionDetails\": [");
+            for (int i = 1; i <= 4; i++) {
+                json.append(i == 1 ? "" : ",").append("{\"name\": \"景点").append(day).append('-').append(i)
+                        .append("\", \"latitude\": 30.2").append(day).append(i).append("4567, \"longitude\": 120.1")
+                        .append(i).append(day).append("3456, \"address\": \"杭州市西湖区某路").append(i).append("号\"}");
+            }
+            json.append("], \"restaurants\": [\"知味观\", \"楼外楼\"], \"accommodations\": [\"西湖边酒店\"], \"estimatedCost\": 650}");
+        }
+        return json.append("]}").toString();
+    }
+
+    // 引入 TravelRouteBinder 之前的解析方式，作为对比基准
+    private static List<TravelRoute> readWithJsonObjectTree(String json) {
+        JSONObject response = JSON.parseObject(json);
+        List<TravelRoute> routes = new ArrayList<>();
+        for (JSONObject aiRoute : response.getJSONArray("routes").toJavaList(JSONObject.class)) {
+            TravelRoute route = new TravelRoute();
+            route.setDayNumber(aiRoute.getInteger("day"));
+            route.setCreatedAt(new Date());
+            route.setUpdatedAt(new Date());
+            route.setDescription(aiRoute.getString("description"));
+            route.setTransportation(aiRoute.getString("transportation"));
+            route.setAttractions(aiRoute.getJSONArray("attractions").toJavaList(String.class));
+            List<Map<String, Object>> attractionDes = new ArrayList<>();
+            for (JSONObject detail : aiRoute.getJSONArray("attractionDetails").toJavaList(JSONObject.class)) {
+                Map<String, Object> des = new HashMap<>();
+                des.put("name", detail.getString("name"));
+                des.put("latitude", detail.getDouble("latitude"));
+                des.put("longitude", detail.getDouble("longitude"));
+                des.put("address", detail.getString("address"));
+                attractionDes.add(des);
+            }
+            route.setAttractionDes(attractionDes);
+            route.setRestaurants(aiRoute.getJSONArray("restaurants").toJavaList(String.class));
+            route.setAccommodations(aiRoute.getJSONArray("accommodations").toJavaList(String.class));
+            route.setEstimatedCost(aiRoute.getDouble("estimatedCost"));
+            routes.add(route);
+        }
+        return routes;
+    }
+
+    private static class Result {
+        private final String name;
+        private final long bytesPerParse;
+        private final double cpuMicrosPerParse;
+
+        private Result(String name, long bytesPerParse, double cpuMicrosPerParse) {
+            this.name = name;
+            this.bytesPerParse = bytesPerParse;
+            this.cpuMicrosPerParse = cpuMicrosPerParse;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-18s 每次分配 %,d 字节，CPU %.1f 微秒", name, bytesPerParse, cpuMicrosPerParse);
+        }
+    }
+}
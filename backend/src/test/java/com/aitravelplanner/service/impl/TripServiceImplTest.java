@@ -0,0 +1,123 @@
+package com.aitravelplanner.service.impl;
+
+import com.aitravelplanner.dto.TripPage;
+import com.aitravelplanner.dto.TripSummary;
+import com.aitravelplanner.model.Trip;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TripServiceImplTest {
+
+    private static final String COLLECTION = "trips";
+
+    private MongoTemplate mongoTemplate;
+    private TripServiceImpl tripService;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getCollectionName(Trip.class)).thenReturn(COLLECTION);
+        tripService = new TripServiceImpl();
+        ReflectionTestUtils.setField(tripService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(tripService, "maxListPageSize", 100);
+    }
+
+    @Test
+    void userTripsSecondPageKeepsUserFilterAndStartsAfterCursor() {
+        givenPages(summaries(0, 3), summaries(2, 1));
+
+        TripPage first = tripService.getUserTrips("user-1", null, 2);
+        TripPage second = tripService.getUserTrips("user-1", first.getNextCursor(), 2);
+
+        assertEquals(2, first.getTrips().size());
+        assertNotNull(first.getNextCursor());
+        assertEquals(1, second.getTrips().size());
+        assertNull(second.getNextCursor());
+
+        Document secondQuery = capturedQueries().get(1);
+        assertEquals("user-1", secondQuery.get("userId"));
+        assertAfter(secondQuery, first.getTrips().get(1));
+    }
+
+    @Test
+    void publicTripsSecondPageStartsAfterCursor() {
+        givenPages(summaries(0, 3), summaries(2, 1));
+
+        TripPage first = tripService.getPublicTrips(null, 2);
+        TripPage second = tripService.getPublicTrips(first.getNextCursor(), 2);
+
+        assertEquals(1, second.getTrips().size());
+        List<Document> queries = capturedQueries();
+        assertTrue(queries.get(0).isEmpty());
+        assertAfter(queries.get(1), first.getTrips().get(1));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> tripService.getPublicTrips("不是游标", 2));
+    }
+
+    @SafeVarargs
+    private void givenPages(List<TripSummary>... pages) {
+        var stubbing = when(mongoTemplate.find(any(Query.class), eq(TripSummary.class), eq(COLLECTION)));
+        for (List<TripSummary> page : pages) {
+            stubbing = stubbing.thenReturn(page);
+        }
+    }
+
+    private List<Document> capturedQueries() {
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(queries.capture(), eq(TripSummary.class), eq(COLLECTION));
+        List<Document> documents = new ArrayList<>();
+        for (Query query : queries.getAllValues()) {
+            assertEquals(3, query.getLimit());
+            documents.add(query.getQueryObject());
+        }
+        return documents;
+    }
+
+    // 第二页从上一页最后一条之后开始：创建时间更早，或创建时间相同且ID更小
+    @SuppressWarnings("unchecked")
+    private static void assertAfter(Document query, TripSummary last) {
+        List<Document> branches = (List<Document>) query.get("$or");
+        assertNotNull(branches, "缺少游标条件: " + query.toJson());
+        assertEquals(last.getCreatedAt(), branches.get(0).get("createdAt", Document.class).get("$lt"));
+        List<Document> sameTime = (List<Document>) branches.get(1).get("$and");
+        assertEquals(new ObjectId(last.getId()), sameTime.get(1).get("_id", Document.class).get("$lt"));
+    }
+
+    // 按创建时间倒序排列的行程摘要，from 为第一条的序号
+    private static List<TripSummary> summaries(int from, int count) {
+        long newest = 1_760_000_000_000L;
+        List<TripSummary> trips = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            TripSummary trip = new TripSummary();
+            trip.setId(new ObjectId(new Date(newest - i * 60_000L), i).toHexString());
+            trip.setCreatedAt(new Date(newest - i * 60_000L));
+            trips.add(trip);
+        }
+        return trips;
+    }
+}
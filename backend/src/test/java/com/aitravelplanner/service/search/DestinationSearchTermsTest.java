@@ -0,0 +1,79 @@
+package com.aitravelplanner.service.search;
+
+import com.aitravelplanner.model.Trip;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DestinationSearchTermsTest {
+
+    @Test
+    void termsCoverExactPrefixAndGrams() {
+        List<String> terms = DestinationSearchTerms.terms("杭州市");
+
+        assertTrue(terms.contains(DestinationSearchTerms.exactTerm("杭州")));
+        assertTrue(terms.containsAll(List.of("^杭", "^杭州", "^杭州市")));
+        assertTrue(terms.containsAll(List.of("~杭", "~州", "~市", "~杭州", "~州市")));
+        assertEquals(terms.size(), terms.stream().distinct().count());
+    }
+
+    @Test
+    void queryAndDestinationNormalizeTheSameWay() {
+        String query = DestinationSearchTerms.normalizeQuery(" 杭州市 ");
+
+        assertEquals("杭州", query);
+        assertTrue(DestinationSearchTerms.terms("杭州").contains(DestinationSearchTerms.exactTerm(query)));
+        assertTrue(DestinationSearchTerms.terms("杭州市").contains(DestinationSearchTerms.exactTerm(query)));
+    }
+
+    @Test
+    void shortNameIsNotStrippedToNothing() {
+        assertEquals("沙市", DestinationSearchTerms.normalizeQuery("沙市"));
+    }
+
+    @Test
+    void latinDestinationsIgnoreCaseAndWhitespace() {
+        assertEquals("newyork", DestinationSearchTerms.normalize(" New York "));
+        assertTrue(DestinationSearchTerms.terms("New York").contains(DestinationSearchTerms.prefixTerm("new")));
+    }
+
+    @Test
+    void substringQueryRequiresAdjacentPairs() {
+        assertEquals(List.of("~西湖", "~湖区"), DestinationSearchTerms.gramTerms("西湖区"));
+        assertEquals(List.of("~西"), DestinationSearchTerms.gramTerms("西"));
+
+        List<String> terms = DestinationSearchTerms.terms("杭州西湖区");
+        assertTrue(terms.containsAll(DestinationSearchTerms.gramTerms("西湖")));
+        assertFalse(terms.containsAll(DestinationSearchTerms.gramTerms("杭湖")));
+    }
+
+    @Test
+    void prefixTermsAreLimited() {
+        String destination = "a".repeat(DestinationSearchTerms.MAX_PREFIX_LENGTH + 10);
+
+        long prefixes = DestinationSearchTerms.terms(destination).stream().filter(term -> term.startsWith("^")).count();
+
+        assertEquals(DestinationSearchTerms.MAX_PREFIX_LENGTH, prefixes);
+    }
+
+    @Test
+    void applySetsSearchFields() {
+        Trip trip = new Trip();
+        trip.setDestination("杭州市");
+
+        DestinationSearchTerms.apply(trip);
+
+        assertEquals("杭州市", trip.getDestinationKey());
+        assertEquals(DestinationSearchTerms.terms("杭州市"), trip.getDestinationTerms());
+    }
+
+    @Test
+    void blankDestinationHasNoTerms() {
+        assertTrue(DestinationSearchTerms.terms("  ").isEmpty());
+        assertTrue(DestinationSearchTerms.terms(null).isEmpty());
+    }
+}